@@ -0,0 +1,180 @@
+package be.uantwerpen.sc.tools.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Writes the simulator events to the Java Flight Recorder
+ * Events are committed when the measured work is done, the durations are fields of the event
+ * Only compiled on JDK 11+, loaded by SimFlightRecorder
+ */
+public class JfrEventRecorder implements SimEventRecorder
+{
+    @Override
+    public void tick(long botId, long socketPoll, long update)
+    {
+        TickEvent event = new TickEvent();
+
+        if(!event.isEnabled())
+            return;
+
+        event.botId = botId;
+        event.socketPoll = socketPoll;
+        event.update = update;
+        event.commit();
+    }
+
+    @Override
+    public void command(long botId, String command, String response, long duration)
+    {
+        CommandEvent event = new CommandEvent();
+
+        if(!event.isEnabled())
+            return;
+
+        event.botId = botId;
+        event.command = command;
+        event.response = response;
+        event.processing = duration;
+        event.commit();
+    }
+
+    @Override
+    public void eventFlush(long botId, int events, long duration)
+    {
+        EventFlushEvent event = new EventFlushEvent();
+
+        if(!event.isEnabled())
+            return;
+
+        event.botId = botId;
+        event.events = events;
+        event.write = duration;
+        event.commit();
+    }
+
+    @Override
+    public void coreBootPhase(long botId, String phase, long duration)
+    {
+        CoreBootEvent event = new CoreBootEvent();
+
+        if(!event.isEnabled())
+            return;
+
+        event.botId = botId;
+        event.phase = phase;
+        event.elapsed = duration;
+        event.commit();
+    }
+
+    @Override
+    public void workerMessage(long botId, String job, boolean result, long duration)
+    {
+        WorkerMessageEvent event = new WorkerMessageEvent();
+
+        if(!event.isEnabled())
+            return;
+
+        event.botId = botId;
+        event.job = job;
+        event.result = result;
+        event.handling = duration;
+        event.commit();
+    }
+
+    @Name("be.uantwerpen.sc.Tick")
+    @Label("Simulation Tick")
+    @Description("One simulation update of a car")
+    @Category({"SmartCity", "Simulation"})
+    static class TickEvent extends Event
+    {
+        @Label("Bot ID")
+        long botId;
+
+        @Label("Socket Poll")
+        @Timespan
+        long socketPoll;
+
+        @Label("Update")
+        @Timespan
+        long update;
+    }
+
+    @Name("be.uantwerpen.sc.Command")
+    @Label("Task Command")
+    @Description("One task command received from a core")
+    @Category({"SmartCity", "Simulation"})
+    static class CommandEvent extends Event
+    {
+        @Label("Bot ID")
+        long botId;
+
+        @Label("Command")
+        String command;
+
+        @Label("Response")
+        String response;
+
+        @Label("Processing")
+        @Timespan
+        long processing;
+    }
+
+    @Name("be.uantwerpen.sc.EventFlush")
+    @Label("Event Flush")
+    @Description("One write of queued events to a core")
+    @Category({"SmartCity", "Simulation"})
+    static class EventFlushEvent extends Event
+    {
+        @Label("Bot ID")
+        long botId;
+
+        @Label("Events")
+        int events;
+
+        @Label("Write")
+        @Timespan
+        long write;
+    }
+
+    @Name("be.uantwerpen.sc.CoreBootPhase")
+    @Label("Core Boot Phase")
+    @Description("One phase of starting or stopping a core process")
+    @Category({"SmartCity", "Core"})
+    static class CoreBootEvent extends Event
+    {
+        @Label("Bot ID")
+        long botId;
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    @Name("be.uantwerpen.sc.WorkerMessage")
+    @Label("Worker Message")
+    @Description("One STOMP message of the server handled by the deployer")
+    @Category({"SmartCity", "Deployer"})
+    static class WorkerMessageEvent extends Event
+    {
+        @Label("Bot ID")
+        long botId;
+
+        @Label("Job")
+        String job;
+
+        @Label("Result")
+        boolean result;
+
+        @Label("Handling")
+        @Timespan
+        long handling;
+    }
+}
@@ -0,0 +1,122 @@
+package be.uantwerpen.sc.benchmarks;
+
+import be.uantwerpen.sc.services.sockets.SimConnection;
+import be.uantwerpen.sc.services.sockets.SimLineCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Connection that replays fixed messages and encodes the output into a discarding channel
+ * Measures the handlers and the codec without socket calls
+ */
+final class BenchmarkConnection implements SimConnection, WritableByteChannel
+{
+    private final SimLineCodec codec = new SimLineCodec();
+    private final String[] messages;
+    private int next;
+    private int available;
+    private long bytesWritten;
+
+    BenchmarkConnection(String... messages)
+    {
+        this.messages = messages;
+        this.next = 0;
+        this.available = 0;
+    }
+
+    /**
+     * Makes the next messages available for reading
+     * @param count Number of messages
+     */
+    void receive(int count)
+    {
+        this.available = count;
+    }
+
+    long getBytesWritten()
+    {
+        return this.bytesWritten;
+    }
+
+    @Override
+    public String getMessage()
+    {
+        if(this.available == 0)
+            return null;
+
+        this.available--;
+        String message = this.messages[this.next];
+        this.next = (this.next + 1) % this.messages.length;
+
+        return message;
+    }
+
+    @Override
+    public CharSequence getLine()
+    {
+        return this.getMessage();
+    }
+
+    @Override
+    public boolean sendMessage(String message)
+    {
+        return this.sendMessage(message, SimLineCodec.Ending.NONE);
+    }
+
+    @Override
+    public boolean sendMessage(CharSequence message, SimLineCodec.Ending ending)
+    {
+        try {
+            return this.codec.write(this, message, ending);
+        }
+        catch(IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void appendMessage(CharSequence message, SimLineCodec.Ending ending)
+    {
+        this.codec.append(message, ending);
+    }
+
+    @Override
+    public boolean flushMessages()
+    {
+        try {
+            return this.codec.flush(this);
+        }
+        catch(IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return true;
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    @Override
+    public int write(ByteBuffer source)
+    {
+        int count = source.remaining();
+        source.position(source.limit());
+        this.bytesWritten += count;
+
+        return count;
+    }
+}
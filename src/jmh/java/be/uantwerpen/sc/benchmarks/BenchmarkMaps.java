@@ -0,0 +1,79 @@
+package be.uantwerpen.sc.benchmarks;
+
+import be.uantwerpen.rc.models.map.Link;
+import be.uantwerpen.rc.models.map.Map;
+import be.uantwerpen.rc.models.map.Point;
+import be.uantwerpen.rc.models.map.Tile;
+import be.uantwerpen.sc.services.mapService.MapService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic maps for the benchmarks, no backend needed
+ */
+final class BenchmarkMaps
+{
+    private BenchmarkMaps()
+    {
+    }
+
+    /**
+     * Creates a line of points with ids 1..size, both ends are end points, the others crossings
+     * Every point links to its neighbours: angle 0 to the next point, 180 to the previous one
+     * @param size Number of points
+     * @return Map service serving the map
+     */
+    static MapService lineMap(int size)
+    {
+        List<Point> points = new ArrayList<>(size);
+
+        for(long id = 1; id <= size; id++)
+        {
+            Tile tile = new Tile();
+            tile.setType(id == 1 || id == size ? "end" : "crossing");
+            tile.setLocked(false);
+            tile.setRfid("TAG-" + id);
+
+            List<Link> neighbours = new ArrayList<>();
+
+            if(id < size)
+                neighbours.add(link(id, id + 1, 0.0));
+
+            if(id > 1)
+                neighbours.add(link(id, id - 1, 180.0));
+
+            Point point = new Point();
+            point.setId(id);
+            point.setTile(tile);
+            point.setNeighbours(neighbours);
+
+            points.add(point);
+        }
+
+        Map map = new Map();
+        map.setPointList(points);
+
+        MapService mapService = new MapService() {
+            @Override
+            protected Map loadMap()
+            {
+                return map;
+            }
+        };
+        mapService.updateMap();
+
+        return mapService;
+    }
+
+    private static Link link(long start, long end, double angle)
+    {
+        Link link = new Link();
+        link.setStartPoint(start);
+        link.setEndPoint(end);
+        link.setAngle(angle);
+        link.getCost().setLength(300);
+
+        return link;
+    }
+}
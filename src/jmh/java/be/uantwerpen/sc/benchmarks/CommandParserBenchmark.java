@@ -0,0 +1,77 @@
+package be.uantwerpen.sc.benchmarks;
+
+import be.uantwerpen.sc.tools.smartcar.commands.Command;
+import be.uantwerpen.sc.tools.smartcar.commands.CommandParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode cost of the task commands: typed parser against the former split based parsing
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandParserBenchmark
+{
+    /**
+     * Command mix of a car following a route with distance polling
+     */
+    private static final String[] COMMANDS = {
+            "DRIVE FOLLOWLINE",
+            "DRIVE DISTANCE",
+            "DRIVE DISTANCE",
+            "DRIVE TURN L",
+            "DRIVE FORWARD 120",
+            "DRIVE DISTANCE",
+            "DRIVE ROTATE R 180",
+            "TAG READ UID"
+    };
+
+    private final CommandParser parser = new CommandParser();
+    private final Command command = new Command();
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void typedParser(Blackhole blackhole)
+    {
+        for(String message : COMMANDS)
+        {
+            this.parser.parse(message, this.command);
+            blackhole.consume(this.command.getType());
+            blackhole.consume(this.command.getValue());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void splitParser(Blackhole blackhole)
+    {
+        for(String message : COMMANDS)
+        {
+            String task = message.split(" ")[0].trim();
+            blackhole.consume(task);
+
+            if(message.startsWith("DRIVE FORWARD") || message.startsWith("DRIVE FOLLOWLINE"))
+            {
+                String[] parts = message.split(" ", 3);
+                if(parts.length == 3)
+                    blackhole.consume((int) Double.parseDouble(parts[2]));
+            }
+            else if(message.startsWith("DRIVE TURN") || message.startsWith("DRIVE ROTATE"))
+            {
+                if(message.split(" ").length == 4 && message.split(" ")[2].equals("L"))
+                    blackhole.consume((int) Double.parseDouble(message.split(" ")[3]));
+                else if(message.split(" ").length >= 3)
+                    blackhole.consume(message.split(" ")[2]);
+            }
+        }
+    }
+}
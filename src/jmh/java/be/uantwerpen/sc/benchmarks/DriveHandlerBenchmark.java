@@ -0,0 +1,71 @@
+package be.uantwerpen.sc.benchmarks;
+
+import be.uantwerpen.sc.tools.clock.SteppedClock;
+import be.uantwerpen.sc.tools.smartcar.handlers.DriveHandler;
+import be.uantwerpen.sc.tools.smartcar.handlers.SimpleLocationHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the polled drive simulation: position updates and starting queued drive tasks
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DriveHandlerBenchmark
+{
+    private SteppedClock clock;
+    private DriveHandler driveHandler;
+
+    @Setup
+    public void setup()
+    {
+        SimpleLocationHandler locationHandler = new SimpleLocationHandler(BenchmarkMaps.lineMap(100));
+        locationHandler.initLocationHandler(1);
+
+        this.clock = new SteppedClock(0L);
+        this.driveHandler = new DriveHandler(70, locationHandler, this.clock);
+        this.startLongDrive();
+    }
+
+    /**
+     * One 100 ms tick while driving a long segment
+     */
+    @Benchmark
+    public boolean updatePosition()
+    {
+        this.clock.advance(100);
+
+        boolean reached = this.driveHandler.updatePosition();
+
+        if(reached)
+            this.startLongDrive();
+
+        return reached;
+    }
+
+    private void startLongDrive()
+    {
+        this.driveHandler.newDriveDistanceCommand(1.0e9f);
+        this.driveHandler.startNextDriveTask();
+    }
+
+    /**
+     * Queueing and starting a drive task
+     */
+    @Benchmark
+    public boolean startNextDriveTask()
+    {
+        this.driveHandler.abortDriving();
+        this.driveHandler.newDriveDistanceCommand(300);
+
+        return this.driveHandler.startNextDriveTask();
+    }
+}
@@ -0,0 +1,56 @@
+package be.uantwerpen.sc.benchmarks;
+
+import be.uantwerpen.sc.tools.smartcar.handlers.EventHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flushing the events of one tick, output is encoded but not sent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventHandlerBenchmark
+{
+    /**
+     * Events generated per tick
+     */
+    @Param({"1", "16", "128"})
+    private int events;
+
+    /**
+     * Maximum events per write, 1 writes every event separately
+     */
+    @Param({"1", "64"})
+    private int batchSize;
+
+    private EventHandler eventHandler;
+    private BenchmarkConnection connection;
+
+    @Setup
+    public void setup()
+    {
+        this.eventHandler = new EventHandler();
+        this.eventHandler.setBatching(this.batchSize, 0);
+        this.connection = new BenchmarkConnection("");
+    }
+
+    @Benchmark
+    public long processEvents()
+    {
+        for(int i = 0; i < this.events; i++)
+            this.eventHandler.addEvent("TRAVEL DISTANCE EVENT: 1234");
+
+        this.eventHandler.processEvents(this.connection);
+
+        return this.connection.getBytesWritten();
+    }
+}
@@ -0,0 +1,59 @@
+package be.uantwerpen.sc.benchmarks;
+
+import be.uantwerpen.sc.tools.smartcar.handlers.LocationHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point and link lookups of the location handler on synthetic maps
+ * The handler logs every drive command, logging is limited to errors
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Dorg.slf4j.simpleLogger.defaultLogLevel=error", "-Dlogging.level.root=ERROR"})
+public class LocationHandlerBenchmark
+{
+    @Param({"100", "1000", "10000", "100000"})
+    private int points;
+
+    private LocationHandler locationHandler;
+
+    @Setup
+    public void setup()
+    {
+        this.locationHandler = new LocationHandler(BenchmarkMaps.lineMap(this.points));
+        //Start halfway the line, lookups scan half of the points
+        this.locationHandler.initLocationHandler(this.points / 2);
+    }
+
+    /**
+     * Point lookup by id, as used by the tag reader
+     */
+    @Benchmark
+    public String pointLookup()
+    {
+        return this.locationHandler.getNodeRFID(ThreadLocalRandom.current().nextInt(1, this.points + 1));
+    }
+
+    /**
+     * Point and outgoing link lookup of a follow line command
+     */
+    @Benchmark
+    public int linkLookup()
+    {
+        this.locationHandler.startFollowLine();
+
+        return this.locationHandler.getDistanceTargetLocation();
+    }
+}
@@ -0,0 +1,84 @@
+package be.uantwerpen.sc.benchmarks;
+
+import be.uantwerpen.sc.services.sockets.SimLineCodec;
+import be.uantwerpen.sc.services.sockets.SimSocket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command and response round trip over loopback: core writes a command, the simulator reads it and answers
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SimSocketBenchmark
+{
+    private static final byte[] COMMAND = "DRIVE DISTANCE\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Length of "ACK\r\n# "
+     */
+    private static final int RESPONSE_LENGTH = 7;
+
+    private ServerSocket serverSocket;
+    private Socket coreSocket;
+    private SimSocket simSocket;
+    private InputStream coreInput;
+    private OutputStream coreOutput;
+    private final byte[] response = new byte[RESPONSE_LENGTH];
+
+    @Setup
+    public void setup() throws IOException
+    {
+        this.serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        this.coreSocket = new Socket(InetAddress.getLoopbackAddress(), this.serverSocket.getLocalPort());
+        this.coreSocket.setTcpNoDelay(true);
+
+        Socket socket = this.serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(1000);
+
+        this.simSocket = new SimSocket(socket);
+        this.coreInput = this.coreSocket.getInputStream();
+        this.coreOutput = this.coreSocket.getOutputStream();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        this.simSocket.close();
+        this.coreSocket.close();
+        this.serverSocket.close();
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException
+    {
+        this.coreOutput.write(COMMAND);
+        this.coreOutput.flush();
+
+        String message = this.simSocket.getMessage();
+        this.simSocket.sendMessage("ACK", SimLineCodec.Ending.PROMPT);
+
+        int read = 0;
+        while(read < RESPONSE_LENGTH)
+            read += this.coreInput.read(this.response, read, RESPONSE_LENGTH - read);
+
+        return message.length() + read;
+    }
+}
@@ -0,0 +1,13 @@
+package be.uantwerpen.sc.models.sim;
+
+/**
+ * Boot phases of a core, in the order they are normally reached
+ */
+public enum CoreBootPhase
+{
+    SPAWNED,
+    JVM_UP,
+    TASK_CONNECTED,
+    EVENT_CONNECTED,
+    FIRST_COMMAND
+}
@@ -0,0 +1,111 @@
+package be.uantwerpen.sc.models.sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JVM options of a core process, the profile element of a core in BotCoreConfig.xml
+ * Heap, garbage collector and tiered compilation are turned into JVM arguments,
+ * cds enables the class data archive of the core jar (see CoreClassArchives)
+ */
+public class CoreLaunchProfile
+{
+    /**
+     * Plain java -jar, used for cores without profile
+     */
+    public static final CoreLaunchProfile DEFAULT = new CoreLaunchProfile(null, null, null, false, Collections.emptyList());
+
+    private final String heap;
+    private final String gc;
+    private final String tiered;
+    private final boolean cds;
+    private final List<String> options;
+
+    /**
+     * @param heap Maximum heap size (e.g. 64m), null for the JVM default
+     * @param gc Garbage collector: serial, parallel, g1, z or shenandoah, null for the JVM default
+     * @param tiered Tiered compilation: full, c1 (stop at the client compiler) or off, null for full
+     * @param cds Use a class data archive of the core jar
+     * @param options Additional JVM options
+     */
+    public CoreLaunchProfile(String heap, String gc, String tiered, boolean cds, List<String> options)
+    {
+        if(heap != null && !heap.matches("\\d+[kKmMgG]?"))
+            throw new IllegalArgumentException("Invalid heap size: " + heap);
+
+        if(gc != null && gcOption(gc) == null)
+            throw new IllegalArgumentException("Unknown garbage collector: " + gc);
+
+        if(tiered != null && !tiered.equals("full") && !tiered.equals("c1") && !tiered.equals("off"))
+            throw new IllegalArgumentException("Unknown tiered compilation mode: " + tiered);
+
+        this.heap = heap;
+        this.gc = gc;
+        this.tiered = tiered;
+        this.cds = cds;
+        this.options = new ArrayList<>(options);
+    }
+
+    public String getHeap()
+    {
+        return this.heap;
+    }
+
+    public String getGc()
+    {
+        return this.gc;
+    }
+
+    public String getTiered()
+    {
+        return this.tiered;
+    }
+
+    public boolean isCds()
+    {
+        return this.cds;
+    }
+
+    /**
+     * @return JVM arguments of the profile, without the class data archive
+     */
+    public List<String> getJvmArguments()
+    {
+        List<String> arguments = new ArrayList<>();
+
+        if(this.heap != null)
+            arguments.add("-Xmx" + this.heap);
+
+        if(this.gc != null)
+            arguments.add(gcOption(this.gc));
+
+        if("c1".equals(this.tiered))
+            arguments.add("-XX:TieredStopAtLevel=1");
+        else if("off".equals(this.tiered))
+            arguments.add("-XX:-TieredCompilation");
+
+        arguments.addAll(this.options);
+
+        return arguments;
+    }
+
+    private static String gcOption(String gc)
+    {
+        switch(gc)
+        {
+            case "serial":
+                return "-XX:+UseSerialGC";
+            case "parallel":
+                return "-XX:+UseParallelGC";
+            case "g1":
+                return "-XX:+UseG1GC";
+            case "z":
+                return "-XX:+UseZGC";
+            case "shenandoah":
+                return "-XX:+UseShenandoahGC";
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package be.uantwerpen.sc.models.sim;
+
+import be.uantwerpen.sc.services.SimThreadService;
+import be.uantwerpen.sc.services.sockets.SimPipeService;
+import be.uantwerpen.sc.tools.fakecore.FakeCore;
+
+import java.net.Socket;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Core simulation running the fake core in-process instead of the RobotCore jar
+ * Used for load tests with many cars, no backend is needed
+ */
+public class FakeSimCore extends SimCore
+{
+    private volatile FakeCore fakeCore;
+    private volatile CountDownLatch stopped;
+
+    public FakeSimCore()
+    {
+        super("fakecore", "0.0.1");
+        this.fakeCore = null;
+        this.stopped = new CountDownLatch(0);
+    }
+
+    @Override
+    public boolean start(List<String> arguments)
+    {
+        if(this.fakeCore != null && this.stopped.getCount() > 0)
+            return false;
+
+        //Core arguments are system properties: -Dkey=value
+        //Options not passed by the car (fakecore.*) can be set as system properties of the simulator
+        Properties properties = new Properties(System.getProperties());
+
+        for(String argument : arguments)
+        {
+            int separator = argument.indexOf('=');
+
+            if(argument.startsWith("-D") && separator > 2)
+                properties.setProperty(argument.substring(2, separator), argument.substring(separator + 1));
+        }
+
+        if("memory".equals(properties.getProperty("car.driver.transport")))
+            properties.put("car.driver.connector", (IntFunction<Socket>) SimPipeService::connect);
+
+        FakeCore core = new FakeCore(properties);
+        CountDownLatch coreStopped = new CountDownLatch(1);
+
+        this.fakeCore = core;
+        this.stopped = coreStopped;
+        this.beginBoot();
+
+        SimThreadService.newThread(() -> {
+            try {
+                this.bootPhase(CoreBootPhase.JVM_UP);
+                core.run();
+            }
+            finally {
+                coreStopped.countDown();
+            }
+        }, "SimCore-" + this.getCoreID()).start();
+
+        this.bootPhase(CoreBootPhase.SPAWNED);
+
+        return true;
+    }
+
+    @Override
+    public boolean stop()
+    {
+        FakeCore core = this.fakeCore;
+
+        if(core == null || this.stopped.getCount() == 0)
+            return false;
+
+        core.stop();
+        return true;
+    }
+
+    @Override
+    public boolean awaitStop(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return this.stopped.await(timeout, unit);
+    }
+
+    @Override
+    public SimStatus getStatus()
+    {
+        FakeCore core = this.fakeCore;
+
+        if(core == null || this.stopped.getCount() == 0)
+            return SimStatus.OFF;
+
+        return core.isConnected() ? SimStatus.RUNNING : SimStatus.BOOT;
+    }
+
+    /**
+     * Status follows the connection of the fake core, see getStatus
+     */
+    @Override
+    protected boolean bootReady()
+    {
+        return true;
+    }
+
+    /**
+     * @return Fake core of the last start, null if never started
+     */
+    public FakeCore getFakeCore()
+    {
+        return this.fakeCore;
+    }
+}
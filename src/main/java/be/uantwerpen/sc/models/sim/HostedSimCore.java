@@ -0,0 +1,335 @@
+package be.uantwerpen.sc.models.sim;
+
+import be.uantwerpen.sc.services.SimCoreLogService;
+import be.uantwerpen.sc.services.SimThreadService;
+import be.uantwerpen.sc.services.sockets.SimPipeService;
+import be.uantwerpen.sc.tools.corehost.CoreClassLoaders;
+import be.uantwerpen.sc.tools.corehost.CoreContext;
+import be.uantwerpen.sc.tools.corehost.CoreLog;
+import be.uantwerpen.sc.tools.corehost.CoreSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Core simulation running the core jar inside the simulator JVM instead of a core process
+ * The jar is loaded once in an isolated class loader shared by all cores of that jar (see CoreClassLoaders),
+ * every core runs in its own thread group with its own system properties and console (see CoreContext)
+ * With the memory transport the core connects to its car through SimPipeService instead of TCP
+ * Cores end by returning from main and stopping their threads, System.exit only ends the core where CoreSystem can block it
+ */
+public class HostedSimCore extends SimCore
+{
+    private static final Logger logger = LoggerFactory.getLogger(HostedSimCore.class);
+
+    private volatile ThreadGroup coreGroup;
+
+    /**
+     * Released when the main method of the core has returned
+     */
+    private volatile CountDownLatch mainEnded;
+
+    /**
+     * Boot timeout on the shared simulation timer, cancelled when the core connected or is stopped
+     */
+    private volatile ScheduledFuture<?> bootTimeout;
+    private Pipe.SinkChannel console;
+    private CoreLog log;
+
+    public HostedSimCore(String coreLocation, String version)
+    {
+        super(coreLocation, version);
+        this.coreGroup = null;
+        this.mainEnded = new CountDownLatch(0);
+        this.console = null;
+    }
+
+    @Override
+    public synchronized boolean start(List<String> arguments)
+    {
+        if(this.isRunning())
+            return false;
+
+        this.beginBoot();
+        CoreClassLoaders.CoreJar jar;
+        Pipe input;
+
+        try {
+            jar = CoreClassLoaders.get(new File(this.getCoreLocation()));
+            input = Pipe.open();
+        }
+        catch(IOException e) {
+            System.err.println("Could not load core jar: " + this.getCoreLocation() + "!");
+            e.printStackTrace();
+
+            this.status = SimStatus.ERROR;
+            return false;
+        }
+
+        CoreSystem.install();
+
+        //Core arguments are system properties: -Dkey=value
+        //They are also passed as --key=value, Spring Boot cores give those precedence over their configuration files
+        Properties properties = new Properties();
+        List<String> coreArguments = new ArrayList<>();
+
+        for(String argument : arguments)
+        {
+            int separator = argument.indexOf('=');
+
+            if(argument.startsWith("-D") && separator > 2)
+            {
+                properties.setProperty(argument.substring(2, separator), argument.substring(separator + 1));
+                coreArguments.add("--" + argument.substring(2));
+            }
+        }
+
+        //Cores share the JVM: no MBeans or shutdown hooks per core
+        coreArguments.add("--spring.jmx.enabled=false");
+        coreArguments.add("--spring.main.register-shutdown-hook=false");
+
+        if("memory".equals(properties.getProperty("car.driver.transport")))
+            properties.put("car.driver.connector", (IntFunction<Socket>) SimPipeService::connect);
+
+        CoreContext context = new CoreContext(properties, Channels.newInputStream(input.source()), new CoreOutput());
+        ThreadGroup group = new ThreadGroup("SimCore-" + this.getCoreID());
+        context.setExitHandler(status -> this.exited(group, status));
+
+        Thread mainThread = new Thread(group, () -> context.run(() -> this.runMain(jar, coreArguments)), "SimCore-" + this.getCoreID());
+        mainThread.setContextClassLoader(jar.getClassLoader());
+
+        this.console = input.sink();
+        this.log = SimCoreLogService.open(this.getCoreID());
+        this.coreGroup = group;
+        this.mainEnded = new CountDownLatch(1);
+        this.runArguments = arguments;
+        this.stopRequested = false;
+        this.status = SimStatus.BOOT;
+
+        mainThread.start();
+        this.bootPhase(CoreBootPhase.SPAWNED);
+
+        //Stops a core that does not connect to its car
+        this.bootTimeout = SimThreadService.schedule(this::bootTimedOut, BOOT_TIMEOUT, TimeUnit.SECONDS);
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean stop()
+    {
+        if(!this.isRunning() || this.stopRequested)
+            return false;
+
+        this.stopRequested = true;
+        this.status = SimStatus.SHUTDOWN;
+        this.cancelBootTimeout();
+
+        logger.info("Shutting down hosted core " + this.getCoreID() + ".");
+
+        try {
+            //Exit command for a clean shutdown, end of input afterwards
+            this.console.write(ByteBuffer.wrap("exit\n".getBytes(StandardCharsets.US_ASCII)));
+            this.console.close();
+        }
+        catch(IOException e) {
+            System.err.println("Could not send shutdown command to hosted core " + this.getCoreID() + "!");
+            this.coreGroup.interrupt();
+        }
+
+        return true;
+    }
+
+    /**
+     * Waits until the main method and all threads of the core have ended
+     */
+    @Override
+    public boolean awaitStop(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        if(!this.mainEnded.await(timeout, unit))
+            return false;
+
+        ThreadGroup group = this.coreGroup;
+
+        if(group == null)
+            return true;
+
+        //Join the threads the core started, they may start others while ending
+        while(group.activeCount() > 0)
+        {
+            Thread[] threads = new Thread[group.activeCount() + 1];
+            int count = group.enumerate(threads);
+
+            if(count == 0)
+                break;
+
+            for(int i = 0; i < count; i++)
+            {
+                long remaining = deadline - System.nanoTime();
+
+                if(remaining <= 0)
+                    return false;
+
+                TimeUnit.NANOSECONDS.timedJoin(threads[i], remaining);
+            }
+        }
+
+        //Output of threads that ended after main
+        this.log.close();
+
+        return true;
+    }
+
+    @Override
+    public SimStatus getStatus()
+    {
+        if(this.status != SimStatus.OFF && this.status != SimStatus.ERROR && this.coreGroup != null && !this.isRunning())
+            this.status = this.stopRequested ? SimStatus.OFF : SimStatus.ERROR; //Core ended without stop request
+
+        return this.status;
+    }
+
+    /**
+     * @return True while the main method or a thread of the core is running
+     */
+    @Override
+    protected boolean isRunning()
+    {
+        ThreadGroup group = this.coreGroup;
+
+        return group != null && (this.mainEnded.getCount() > 0 || group.activeCount() > 0);
+    }
+
+    /**
+     * A thread of the core called System.exit, see CoreSystem
+     * @param group Thread group of the core
+     * @param status Exit status
+     */
+    private void exited(ThreadGroup group, int status)
+    {
+        CoreSystem.getSimulatorOut().println("Hosted core " + this.getCoreID() + " called System.exit(" + status + "), stopping its threads.");
+
+        //Unblocks the threads of the core so they can end
+        group.interrupt();
+    }
+
+    private void runMain(CoreClassLoaders.CoreJar jar, List<String> arguments)
+    {
+        try {
+            Class<?> mainClass = Class.forName(jar.getMainClass(), true, jar.getClassLoader());
+            Method main = mainClass.getMethod("main", String[].class);
+
+            //Shared JVM: the core is up once its main class is loaded
+            this.bootPhase(CoreBootPhase.JVM_UP);
+            main.invoke(null, (Object) arguments.toArray(new String[0]));
+        }
+        catch(InvocationTargetException e) {
+            if(!(e.getCause() instanceof CoreSystem.ExitException))
+            {
+                System.err.println("Hosted core " + this.getCoreID() + " failed!");
+                e.getCause().printStackTrace();
+
+                this.status = SimStatus.ERROR;
+            }
+        }
+        catch(Exception e) {
+            System.err.println("Could not run main class " + jar.getMainClass() + " of hosted core " + this.getCoreID() + "!");
+            e.printStackTrace();
+
+            this.status = SimStatus.ERROR;
+        }
+        finally {
+            this.mainEnded.countDown();
+            this.log.close();
+        }
+    }
+
+    @Override
+    protected boolean bootReady()
+    {
+        if(this.status != SimStatus.BOOT)
+            return false;
+
+        CoreSystem.getSimulatorOut().println("Car core initialized. Status: running");
+        this.status = SimStatus.RUNNING;
+        this.cancelBootTimeout();
+
+        return true;
+    }
+
+    private synchronized void bootTimedOut()
+    {
+        if(this.getStatus() != SimStatus.BOOT)
+            return;
+
+        System.err.println("Hosted core " + this.getCoreID() + " did not connect within " + BOOT_TIMEOUT + " s!");
+        this.stop();
+        this.status = SimStatus.ERROR;
+    }
+
+    private void cancelBootTimeout()
+    {
+        ScheduledFuture<?> timeout = this.bootTimeout;
+
+        if(timeout != null)
+            timeout.cancel(false);
+    }
+
+    private void onLine(String line)
+    {
+        this.log.onLine(line);
+    }
+
+    /**
+     * Console output of the core, split in lines
+     */
+    private class CoreOutput extends OutputStream
+    {
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+
+        @Override
+        public synchronized void write(int b)
+        {
+            if(b == '\n')
+            {
+                int length = this.line.size();
+                byte[] bytes = this.line.toByteArray();
+
+                if(length > 0 && bytes[length - 1] == '\r')
+                    length--;
+
+                this.line.reset();
+                onLine(new String(bytes, 0, length, StandardCharsets.UTF_8));
+            }
+            else
+                this.line.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] buffer, int offset, int length)
+        {
+            for(int i = offset; i < offset + length; i++)
+                this.write(buffer[i]);
+        }
+    }
+}
@@ -1,6 +1,13 @@
 package be.uantwerpen.sc.models.sim;
 
-import org.springframework.beans.factory.annotation.Value;
+import be.uantwerpen.sc.services.SimSchedulerService;
+import be.uantwerpen.sc.services.SimThreadService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Created by Thomas on 03/04/2016.
@@ -9,8 +16,25 @@ import org.springframework.beans.factory.annotation.Value;
  */
 public abstract class SimBot implements Runnable
 {
+    private static final Logger logger = LoggerFactory.getLogger(SimBot.class);
+
+    /**
+     * Maximum time a restart waits for the previous simulation to shut down (in seconds)
+     */
+    private static final long RESTART_TIMEOUT = 30;
+
     private Thread simulationThread;
-    protected boolean running;
+    protected volatile boolean running;
+
+    /**
+     * Completed when the simulation is completely shut down, null if never started
+     */
+    private volatile CompletableFuture<Void> simulationDone;
+
+    /**
+     * Shared scheduler driving the simulation, null to run on a private thread
+     */
+    protected SimSchedulerService scheduler;
 
     /**
      * Bot ID
@@ -40,6 +64,8 @@ public abstract class SimBot implements Runnable
     protected SimBot()
     {
         this.running = false;
+        this.simulationDone = null;
+        this.scheduler = null;
         this.type = "bot";
         this.name = "SimBot";
     }
@@ -59,9 +85,16 @@ public abstract class SimBot implements Runnable
         if(this.running)
             return false;
 
-        this.simulationThread = new Thread(this);
-        this.simulationThread.start();
         this.running = true;
+        this.simulationDone = new CompletableFuture<>();
+
+        if(this.scheduler != null)
+            this.scheduler.launch(this::simulationProcess);  //Boot on a shared lifecycle thread
+        else
+        {
+            this.simulationThread = SimThreadService.newThread(this, "SimBot-" + this.id);
+            this.simulationThread.start();
+        }
 
         if(this.getStartPoint() == -1)
             return false;
@@ -70,18 +103,22 @@ public abstract class SimBot implements Runnable
 
     public boolean restart()
     {
-        if(simulationThread != null) {
+        if(this.isSimulationActive()) {
             if (this.running)
                 this.running = false;
 
-            while (simulationThread.isAlive()); //Wait for thread to stop
+            //Wait for simulation to stop
+            if(!this.awaitTermination(RESTART_TIMEOUT, TimeUnit.SECONDS)) {
+                logger.warn("Bot " + this.id + " did not stop within " + RESTART_TIMEOUT + " s, restart cancelled.");
+                return false;
+            }
         }
         return this.start();
     }
 
     public boolean stop()
     {
-        if(!this.running || this.simulationThread == null)
+        if(!this.running || !this.isSimulationActive())
             return false;
 
         if(this.running) {
@@ -101,13 +138,13 @@ public abstract class SimBot implements Runnable
 
     public boolean interrupt()
     {
-        if(this.simulationThread == null)
+        if(!this.isSimulationActive())
             return false;
 
-        if(this.simulationThread.isAlive()) {
+        if(this.simulationThread != null && this.simulationThread.isAlive())
             this.simulationThread.interrupt();
-            this.running = false;
-        }
+
+        this.running = false;
 
         return true;
     }
@@ -117,6 +154,53 @@ public abstract class SimBot implements Runnable
         return this.running;
     }
 
+    /**
+     * @return True if the simulation is started and not completely shut down yet
+     */
+    public boolean isSimulationActive()
+    {
+        CompletableFuture<Void> done = this.simulationDone;
+
+        return done != null && !done.isDone();
+    }
+
+    /**
+     * Waits until the simulation is completely shut down
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return True if the simulation is shut down (or was never started)
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+    {
+        CompletableFuture<Void> done = this.simulationDone;
+
+        if(done == null)
+            return true;
+
+        try {
+            done.get(timeout, unit);
+            return true;
+        }
+        catch(TimeoutException e) {
+            return false;
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        catch(Exception e) {
+            return true;    //Simulation ended exceptionally, it is not running anymore
+        }
+    }
+
+    /**
+     * @return Status of the simulation
+     */
+    public SimStatus getStatus()
+    {
+        return this.isSimulationActive() ? SimStatus.RUNNING : SimStatus.OFF;
+    }
+
     public String getType()
     {
         return this.type;
@@ -171,6 +255,19 @@ public abstract class SimBot implements Runnable
         {
             this.simulationProcess();
         }
+
+        this.simulationFinished();
+    }
+
+    /**
+     * Marks the simulation as completely shut down
+     */
+    protected void simulationFinished()
+    {
+        CompletableFuture<Void> done = this.simulationDone;
+
+        if(done != null)
+            done.complete(null);
     }
 
     // setters for factory
@@ -182,6 +279,10 @@ public abstract class SimBot implements Runnable
         this.robotBackendPort = robotBackendPort;
     }
 
+    public void setScheduler(SimSchedulerService scheduler) {
+        this.scheduler = scheduler;
+    }
+
     public long getId() {
         return id;
     }
@@ -2,26 +2,70 @@ package be.uantwerpen.sc.models.sim;
 
 import be.uantwerpen.sc.models.sim.deployer.Log;
 import be.uantwerpen.sc.services.SimCoresService;
+import be.uantwerpen.sc.services.sockets.SimConnectionService;
 import be.uantwerpen.sc.services.sockets.SimSocketService;
+import be.uantwerpen.sc.tools.clock.SimClock;
+import be.uantwerpen.sc.tools.clock.SimTimer;
+import be.uantwerpen.sc.tools.clock.SimTimerWheel;
+import be.uantwerpen.sc.tools.clock.WallClock;
+import be.uantwerpen.sc.tools.jfr.SimFlightRecorder;
+import be.uantwerpen.sc.tools.metrics.TickMetrics;
 import be.uantwerpen.sc.tools.smartcar.*;
+import be.uantwerpen.sc.tools.smartcar.handlers.DriveHandler;
 import be.uantwerpen.sc.tools.smartcar.handlers.EventHandler;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Thomas on 5/05/2017.
  * Class for simulated robots
  */
-public class SimCar extends SimVehicle
+public class SimCar extends SimVehicle implements SimTickable
 {
     private static final Logger logger = LoggerFactory.getLogger(SimCar.class);
 
-    private SimCore carCore;
-    private SimSocketService taskSocketService;
-    private SimSocketService eventSocketService;
+    /**
+     * Maximum time to wait for the socket services to start or stop (in seconds)
+     */
+    private static final long SOCKET_TIMEOUT = 5;
+
+    /**
+     * Maximum time to wait for the core to shut down (in seconds)
+     */
+    private static final long CORE_STOP_TIMEOUT = 20;
+
+    private volatile SimCore carCore;
+    private SimConnectionService taskSocketService;
+    private SimConnectionService eventSocketService;
+    private SmartCar carSimulation;
+
+    /**
+     * Event batching of the simulation layer
+     */
+    private int eventBatchSize;
+    private long eventBatchDelay;
+
+    /**
+     * Maximum number of core commands processed per tick
+     */
+    private int commandBudget;
+
+    /**
+     * Timing of the simulation ticks, created when the simulation starts
+     */
+    private volatile TickMetrics tickMetrics;
+
+    /**
+     * Meters of the running simulation, removed when it stops
+     */
+    private final List<Meter> meters = new ArrayList<>();
 
     public SimCar()
     {
@@ -30,22 +74,81 @@ public class SimCar extends SimVehicle
         this.eventSocketService = new SimSocketService();
         this.type = "car";
         this.carCore = null;
+        this.carSimulation = null;
+        this.eventBatchSize = 64;
+        this.eventBatchDelay = 0L;
+        this.commandBudget = 1;
+        this.tickMetrics = null;
+    }
+
+    // setters for factory
+    public void setSocketServices(SimConnectionService taskSocketService, SimConnectionService eventSocketService) {
+        this.taskSocketService = taskSocketService;
+        this.eventSocketService = eventSocketService;
+    }
+
+    public void setCommandBudget(int commandBudget) {
+        this.commandBudget = commandBudget;
+    }
+
+    public void setEventBatching(int eventBatchSize, long eventBatchDelay) {
+        this.eventBatchSize = eventBatchSize;
+        this.eventBatchDelay = eventBatchDelay;
+    }
+
+    @Override
+    public SimStatus getStatus() {
+        SimCore core = this.carCore;
+
+        if(core != null && this.isSimulationActive())
+            return core.getStatus();
+
+        return super.getStatus();
+    }
+
+    /**
+     * @return Tick timing of the running simulation, null if the simulation has not started
+     */
+    public TickMetrics getTickMetrics() {
+        return this.tickMetrics;
     }
 
     @Override
     protected void simulationProcess()
     {
-        Thread commandSocketServiceThread = new Thread(this.taskSocketService);
-        Thread eventSocketServiceThread = new Thread(this.eventSocketService);
-        commandSocketServiceThread.start();
-        eventSocketServiceThread.start();
+        //Cores identify their car by robot id on shared ports
+        this.taskSocketService.setRobotId(this.generateCoreId());
+        this.eventSocketService.setRobotId(this.generateCoreId());
+
+        this.taskSocketService.start("SimCar-" + this.id + "-tasks");
+        this.eventSocketService.start("SimCar-" + this.id + "-events");
 
         //Wait for server sockets to initialise
         logger.info("Initializing server sockets...");
-        while((this.taskSocketService.getListeningPort() == 0 || this.eventSocketService.getListeningPort() == 0) && this.isRunning());
+        int taskPort;
+        int eventPort;
+
+        try {
+            taskPort = this.taskSocketService.awaitListening(SOCKET_TIMEOUT, TimeUnit.SECONDS);
+            eventPort = this.eventSocketService.awaitListening(SOCKET_TIMEOUT, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            taskPort = 0;
+            eventPort = 0;
+        }
+
+        if(taskPort == 0 || eventPort == 0)
+        {
+            Log.logSevere("SIMCAR", "Could not open server sockets for Car simulation!");
+            this.stop();
+            this.shutdown();
+            return;
+        }
+
         logger.info("Socket initialisation done");
-        logger.info("Tasksocket port: "+taskSocketService.getListeningPort());
-        logger.info("Eventsocket port: "+eventSocketService.getListeningPort());
+        logger.info("Tasksocket port: "+taskPort);
+        logger.info("Eventsocket port: "+eventPort);
 
         List<String> coreArguments = new ArrayList<String>();
 
@@ -58,8 +161,14 @@ public class SimCar extends SimVehicle
         coreArguments.add("-Drobot.id="+generateCoreId());
         //Setup ports to simulated C-Core
         coreArguments.add("-Dcar.driver.ip=localhost");
-        coreArguments.add("-Dcar.driver.taskport=" + this.taskSocketService.getListeningPort());
-        coreArguments.add("-Dcar.driver.eventport=" + this.eventSocketService.getListeningPort());
+        coreArguments.add("-Dcar.driver.taskport=" + taskPort);
+        coreArguments.add("-Dcar.driver.eventport=" + eventPort);
+        //Cores on shared ports identify themselves with their robot id
+        if(this.taskSocketService.isShared())
+            coreArguments.add("-Dcar.driver.handshake=true");
+        //In-process cores connect through the connector of their core host
+        if(this.taskSocketService.isInMemory())
+            coreArguments.add("-Dcar.driver.transport=memory");
         //Select random free port
         coreArguments.add("-Dserver.port=0");
         coreArguments.add("-Dsc.backend.ip="+ this.robotBackendIP);
@@ -68,56 +177,113 @@ public class SimCar extends SimVehicle
         if(this.carCore == null)
             this.carCore = SimCoresService.getSimulationCore(this.type);
 
-        if(this.carCore != null)
+        if(this.carCore != null) {
+            this.carCore.setCoreID((int) this.id);
+            //A core that keeps crashing stops the car, it would only use ticks and ports
+            this.carCore.setCrashLoopHandler(() -> {
+                Log.logSevere("SIMCAR", "Core of car " + this.id + " keeps crashing, stopping the car.");
+                this.stop();
+            });
             this.carCore.start(coreArguments);
+        }
         else {
             //No core available
             Log.logSevere("SIMCAR", "Could not run Core for Car simulation!");
             this.stop();
+            this.shutdown();
             return;
         }
 
         //Simulation process of SimCar
+        if(this.initSimulation() && this.scheduler != null)
+        {
+            //Ticks are driven by the shared scheduler, shutdown follows once unscheduled
+            this.scheduler.register(this);
+            return;
+        }
+
         this.simulateCar();
 
         //Stop simulation
-        this.carCore.stop();
-
-        commandSocketServiceThread.interrupt();
-        eventSocketServiceThread.interrupt();
-
-        //Wait for socket service to terminate
-        while(commandSocketServiceThread.isAlive() || eventSocketServiceThread.isAlive());
+        this.shutdown();
     }
 
-    private void simulateCar()
+    private boolean initSimulation()
     {
-        SmartCar carSimulation = new SmartCar(this.name, this.simSpeed);
+        SimClock clock = this.scheduler != null ? this.scheduler.getClock() : new WallClock();
+        this.carSimulation = new SmartCar(this.name, this.simSpeed, clock);
+        this.carSimulation.setEventBatching(this.eventBatchSize, this.eventBatchDelay);
+        this.carSimulation.setCommandBudget(this.commandBudget);
 
-        long lastSimulationTime = System.currentTimeMillis();
+        long tickPeriod = this.scheduler != null ? clock.toRealNanos(this.scheduler.getTickPeriod()) : TimeUnit.MILLISECONDS.toNanos(100);
+        this.tickMetrics = new TickMetrics(tickPeriod);
+        this.carSimulation.setTickMetrics(this.tickMetrics);
+        this.carSimulation.setBotId(this.id);
+        this.carSimulation.setConnectionListener(new SmartCar.ConnectionListener()
+        {
+            @Override
+            public void taskConnected()
+            {
+                bootPhase(CoreBootPhase.TASK_CONNECTED);
+            }
+
+            @Override
+            public void eventConnected()
+            {
+                bootPhase(CoreBootPhase.EVENT_CONNECTED);
+            }
+
+            @Override
+            public void firstCommand()
+            {
+                bootPhase(CoreBootPhase.FIRST_COMMAND);
+            }
+        });
+
+        String botId = String.valueOf(this.id);
+        this.meters.add(Gauge.builder("sim.car.events.queued", this.carSimulation.getEventHandler(), EventHandler::getQueueSize)
+                .tag("bot", botId)
+                .description("Events waiting to be sent to the core")
+                .register(Metrics.globalRegistry));
+        this.meters.add(Gauge.builder("sim.car.events.per_flush", this.carSimulation.getEventHandler(), EventHandler::getEventsPerFlush)
+                .tag("bot", botId)
+                .description("Average number of events per write to the core")
+                .register(Metrics.globalRegistry));
+        this.meters.add(Gauge.builder("sim.car.events.batch.max", this.carSimulation.getEventHandler(), EventHandler::getLargestBatch)
+                .tag("bot", botId)
+                .description("Largest number of events sent in one write")
+                .register(Metrics.globalRegistry));
+        this.meters.add(Gauge.builder("sim.car.drive.queued", this.carSimulation.getDriveHandler(), DriveHandler::getQueueSize)
+                .tag("bot", botId)
+                .description("Drive tasks waiting to be started")
+                .register(Metrics.globalRegistry));
 
         //Initialise simulation
-        if(!carSimulation.initSimulation(this.startPoint)) {
+        if(!this.carSimulation.initSimulation(this.startPoint)) {
 
             Log.logSevere("SIMCAR", "Could not initialise SmartCar simulation!");
             Log.logSevere("SIMCAR", "Simulation will abort...");
             this.running = false;
+            return false;
         }
 
         Log.logInfo("SIMCAR", "SmartCar simulation started.");
+        return true;
+    }
+
+    /**
+     * Simulation loop on the private bot thread, used when no scheduler is available
+     */
+    private void simulateCar()
+    {
+        SimClock clock = this.carSimulation.getClock();
+        SimTimerWheel timer = new SimTimerWheel(clock.currentTimeMillis(), 1, 512);
+        this.carSimulation.setTimer(timer);
 
         while(this.isRunning())
         {
-            //Calculated simulation time
-            long currentTime = System.currentTimeMillis();
-            long elapsedTime = currentTime - lastSimulationTime;
-            lastSimulationTime = currentTime;
-
-            //Verify sockets
-            carSimulation.checkConnections(taskSocketService, eventSocketService);
-
-            //Update simulation
-            carSimulation.updateSimulation(elapsedTime);
+            timer.advance(clock.currentTimeMillis());
+            this.tick();
 
             try {
                 //Sleep simulation for 100 ms (simulation resolution > 100 ms)
@@ -128,8 +294,99 @@ public class SimCar extends SimVehicle
             }
         }
 
-        if(!carSimulation.stopSimulation())
-            Log.logSevere("SIMCAR", "Simulation layer is not stopped properly!");
+        this.carSimulation.setTimer(null);
+    }
+
+    @Override
+    public void scheduled(SimTimer timer)
+    {
+        this.carSimulation.setTimer(timer);
+    }
+
+    @Override
+    public boolean tick()
+    {
+        if(!this.isRunning())
+        {
+            //Cancel the pending drive completion on the worker, the timer would run it after the car is unscheduled
+            this.carSimulation.setTimer(null);
+            return false;
+        }
+
+        long start = System.nanoTime();
+
+        //Verify sockets
+        this.carSimulation.checkConnections(taskSocketService, eventSocketService);
+
+        long polled = System.nanoTime();
+        this.tickMetrics.record(TickMetrics.Timer.SOCKET_POLL, polled - start);
+
+        //Update simulation
+        this.carSimulation.updateSimulation();
+
+        long end = System.nanoTime();
+        this.tickMetrics.recordTick(start, end);
+        SimFlightRecorder.tick(this.id, polled - start, end - polled);
+
+        return true;
+    }
+
+    @Override
+    public void unscheduled()
+    {
+        this.shutdown();
+    }
+
+    /**
+     * Stops the simulation layer, the core and the socket services
+     */
+    private void shutdown()
+    {
+        if(this.carSimulation != null)
+        {
+            if(!this.carSimulation.stopSimulation())
+                Log.logSevere("SIMCAR", "Simulation layer is not stopped properly!");
+
+            this.carSimulation = null;
+        }
+
+        for(Meter meter : this.meters)
+            Metrics.globalRegistry.remove(meter);
+
+        this.meters.clear();
+
+        try {
+            if(this.carCore != null)
+            {
+                this.carCore.stop();
+
+                if(!this.carCore.awaitStop(CORE_STOP_TIMEOUT, TimeUnit.SECONDS))
+                    Log.logWarning("SIMCAR", "Core did not stop within " + CORE_STOP_TIMEOUT + " s!");
+            }
+
+            //Wait for socket service to terminate
+            boolean taskSocketStopped = this.taskSocketService.stop(SOCKET_TIMEOUT, TimeUnit.SECONDS);
+            boolean eventSocketStopped = this.eventSocketService.stop(SOCKET_TIMEOUT, TimeUnit.SECONDS);
+
+            if(!taskSocketStopped || !eventSocketStopped)
+                Log.logWarning("SIMCAR", "Socket services did not stop within " + SOCKET_TIMEOUT + " s!");
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.simulationFinished();
+    }
+
+    /**
+     * Reports the connection progress of the simulation to the core
+     */
+    private void bootPhase(CoreBootPhase phase)
+    {
+        SimCore core = this.carCore;
+
+        if(core != null)
+            core.bootPhase(phase);
     }
 
     private String generateCoreId() {
@@ -1,10 +1,31 @@
 package be.uantwerpen.sc.models.sim;
 
+import be.uantwerpen.sc.configurations.SpringContext;
+import be.uantwerpen.sc.services.SimCoreLogService;
+import be.uantwerpen.sc.services.SimCoreOutputService;
+import be.uantwerpen.sc.services.SimCorePoolService;
+import be.uantwerpen.sc.services.SimCoreSupervisorService;
+import be.uantwerpen.sc.services.SimThreadService;
+import be.uantwerpen.sc.tools.corehost.CoreClassArchives;
+import be.uantwerpen.sc.tools.corehost.CoreLog;
+import be.uantwerpen.sc.tools.jfr.SimFlightRecorder;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+
 import java.io.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Created by Thomas on 5/05/2017.
@@ -12,6 +33,48 @@ import java.util.List;
  */
 public class SimCore
 {
+    private static final Logger logger = LoggerFactory.getLogger(SimCore.class);
+
+    /**
+     * Maximum time the core process gets to exit after the exit command (in seconds)
+     */
+    private static final long EXIT_TIMEOUT = 10;
+
+    /**
+     * Maximum time a core gets to connect to the task socket of its car (in seconds)
+     */
+    protected static final long BOOT_TIMEOUT = 60;
+
+    /**
+     * Time from launching a core until it connected to the task socket of its car
+     */
+    private static final Timer bootTimer = Timer.builder("sim.core.boot")
+            .description("Boot duration of the cores")
+            .publishPercentileHistogram()
+            .register(Metrics.globalRegistry);
+
+    /**
+     * Time from launching a core until every boot phase
+     */
+    private static final Map<CoreBootPhase, Timer> bootPhaseTimers = new EnumMap<>(CoreBootPhase.class);
+
+    static
+    {
+        for(CoreBootPhase phase : CoreBootPhase.values())
+        {
+            bootPhaseTimers.put(phase, Timer.builder("sim.core.boot.phase")
+                    .tag("phase", phase.name().toLowerCase())
+                    .description("Time from launching a core until the boot phase")
+                    .publishPercentileHistogram()
+                    .register(Metrics.globalRegistry));
+        }
+    }
+
+    /**
+     * Maximum time to wait for the remaining output of a stopped core (in seconds)
+     */
+    private static final long OUTPUT_DRAIN_TIMEOUT = 1;
+
     /**
      * Robot core jar location
      */
@@ -25,17 +88,48 @@ public class SimCore
     /**
      * Status of the simulation
      */
-    private SimStatus status;
+    protected volatile SimStatus status;
 
     /**
      * Core thread running
      */
-    private boolean running;
+    private volatile boolean running;
+
+    /**
+     * Stop is requested since the last start, a core process exiting otherwise has crashed
+     */
+    protected volatile boolean stopRequested;
+
+    /**
+     * Called when the supervisor gives up the core after repeated crashes
+     */
+    private volatile Runnable crashLoopHandler;
+
+    /**
+     * Released when the core thread has ended
+     */
+    private volatile CountDownLatch stopped;
+
+    /**
+     * Core connected to its car in the current boot
+     */
+    private volatile boolean ready;
+
+    /**
+     * Start of the current boot (System.nanoTime) and time of every boot phase since (in ns, 0 = not reached)
+     */
+    private volatile long bootStart;
+    private final AtomicLongArray bootPhases;
+
+    /**
+     * JVM options of the core process
+     */
+    private CoreLaunchProfile launchProfile;
 
     /**
      * Arguments for the Robot Core (probably)
      */
-    private List<String> runArguments;
+    protected List<String> runArguments;
 
     /**
      * Thread running the core
@@ -52,8 +146,15 @@ public class SimCore
         this.version = "0.0.0";
         this.status = SimStatus.OFF;
         this.running = false;
+        this.stopRequested = false;
+        this.crashLoopHandler = null;
         this.coreThread = null;
         this.coreID = 0;
+        this.launchProfile = CoreLaunchProfile.DEFAULT;
+        this.stopped = new CountDownLatch(0);
+        this.ready = false;
+        this.bootStart = 0L;
+        this.bootPhases = new AtomicLongArray(CoreBootPhase.values().length);
     }
 
     public SimCore(String coreLocation, String version) {
@@ -70,6 +171,16 @@ public class SimCore
 
     public String getVersion() { return this.version; }
 
+    public CoreLaunchProfile getLaunchProfile()
+    {
+        return this.launchProfile;
+    }
+
+    public void setLaunchProfile(CoreLaunchProfile launchProfile)
+    {
+        this.launchProfile = launchProfile;
+    }
+
     public SimStatus getStatus()
     {
         return this.status;
@@ -92,25 +203,29 @@ public class SimCore
      * @param arguments
      * @return Success (false if already running)
      */
-    public boolean start(List<String> arguments)
+    public synchronized boolean start(List<String> arguments)
     {
         if(!running)
         {
             this.runArguments = arguments;
+            this.stopRequested = false;
+            this.stopped = new CountDownLatch(1);
+            running = true;
 
-            coreThread = new Thread(new CoreProcess());
+            coreThread = SimThreadService.newThread(new CoreProcess(), "SimCore-" + coreID);
             System.out.println("Starting JAR-file thread...");
             coreThread.start();
 
-            running = true;
             return true;
         }
         else
             return false;
     }
 
-    public boolean stop()
+    public synchronized boolean stop()
     {
+        stopRequested = true;
+
         if(running)
         {
             coreThread.interrupt();
@@ -120,128 +235,276 @@ public class SimCore
             return false;
     }
 
-    //TODO change to redirect output to file instead of stdout
+    /**
+     * Starts the core again with the arguments of the last start, used after a crash
+     * @return Success (false if running or stopped)
+     */
+    public synchronized boolean restart()
+    {
+        if(this.isRunning() || stopRequested || runArguments == null)
+            return false;
+
+        logger.info("Restarting core " + coreID + ".");
+
+        return this.start(runArguments);
+    }
+
+    /**
+     * @return True while the core is running, stopping included
+     */
+    protected boolean isRunning()
+    {
+        return this.running;
+    }
+
+    public boolean isStopRequested()
+    {
+        return this.stopRequested;
+    }
+
+    public Runnable getCrashLoopHandler()
+    {
+        return this.crashLoopHandler;
+    }
+
+    /**
+     * @param crashLoopHandler Called when the core is given up after repeated crashes
+     */
+    public void setCrashLoopHandler(Runnable crashLoopHandler)
+    {
+        this.crashLoopHandler = crashLoopHandler;
+    }
+
+    /**
+     * Waits until the core thread has ended
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return True if the core is stopped
+     */
+    public boolean awaitStop(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return this.stopped.await(timeout, unit);
+    }
+
+    /**
+     * Starts timing a new boot of the core, called right before the core is launched
+     */
+    protected void beginBoot()
+    {
+        for(int i = 0; i < this.bootPhases.length(); i++)
+            this.bootPhases.set(i, 0L);
+
+        this.ready = false;
+        this.bootStart = System.nanoTime();
+    }
+
+    /**
+     * Records a boot phase of the core, only the first time it is reached in a boot
+     * The core is ready once it connected to the task socket of its car
+     * @param phase Reached boot phase
+     */
+    public void bootPhase(CoreBootPhase phase)
+    {
+        long start = this.bootStart;
+
+        if(start == 0L)
+            return;
+
+        long duration = Math.max(System.nanoTime() - start, 1L);
+
+        if(!this.bootPhases.compareAndSet(phase.ordinal(), 0L, duration))
+            return;
+
+        bootPhaseTimers.get(phase).record(duration, TimeUnit.NANOSECONDS);
+        SimFlightRecorder.coreBootPhase(this.coreID, phase.name().toLowerCase(), duration);
+
+        if(phase == CoreBootPhase.TASK_CONNECTED && this.bootReady())
+        {
+            bootTimer.record(duration, TimeUnit.NANOSECONDS);
+            SimFlightRecorder.coreBootPhase(this.coreID, "boot", duration);
+            this.ready = true;
+        }
+    }
+
+    /**
+     * @param phase Boot phase
+     * @return Time from launching the core until the phase in the last boot (in ns), -1 if not reached
+     */
+    public long getBootPhaseTime(CoreBootPhase phase)
+    {
+        long duration = this.bootPhases.get(phase.ordinal());
+
+        return duration > 0L ? duration : -1L;
+    }
+
+    /**
+     * Called when the core connected to its car
+     * @return True if the core was booting and is running now
+     */
+    protected boolean bootReady()
+    {
+        if(this.status != SimStatus.BOOT)
+            return false;
+
+        System.out.println("Car core initialized. Status: running");
+        this.status = SimStatus.RUNNING;
+
+        return true;
+    }
+
+    /**
+     * @return True if the core connected to its car in the current boot
+     */
+    protected boolean isReady()
+    {
+        return this.ready;
+    }
+
+    /**
+     * @return Time left until the boot timeout of the current boot (in ns), 0 when passed
+     */
+    protected long getBootTimeLeft()
+    {
+        return Math.max(this.bootStart + TimeUnit.SECONDS.toNanos(BOOT_TIMEOUT) - System.nanoTime(), 0L);
+    }
+
     private class CoreProcess implements Runnable
     {
         /**
-         * Runs Core jar with given arguments
+         * Class data archive of a new core process, null for a warm core or without cds
          */
+        private CoreClassArchives.Launch classArchive = null;
+
+        /**
+         * Core process exited after the exit command
+         */
+        private boolean cleanExit = false;
+
         @Override
         public void run()
+        {
+            try {
+                this.runCore();
+            }
+            finally {
+                if(this.classArchive != null)
+                    this.classArchive.complete(this.cleanExit);
+
+                running = false;
+                stopped.countDown();
+            }
+        }
+
+        /**
+         * Runs Core jar with given arguments
+         */
+        private void runCore()
         {
             //Create process
             ProcessBuilder processBuilder = new ProcessBuilder("java");
 
-            //Add core boot arguments
+            //Add JVM options and core boot arguments
             List<String> processCommands = processBuilder.command();
             //System.out.println("Classpath: " + System.getProperty("java.class.path"));
+            processCommands.addAll(launchProfile.getJvmArguments());
             processCommands.addAll(runArguments);
             processCommands.add("-jar");
             processCommands.add(coreLocation);
             processBuilder.redirectErrorStream(true);
-            processBuilder.command(processCommands);
 
             //Uncomment these lines to test with core in IDE
             //status = SimStatus.RUNNING;
             //while(!Thread.currentThread().isInterrupted());
 
             status = SimStatus.BOOT;
+            beginBoot();
 
-            Process process;
-            try {
-                process = processBuilder.start();
+            //Pre-launched core of the pool, a new process otherwise
+            Process process = takeWarmCore();
 
-            }
-            catch(Exception e)
+            if(process != null)
+                logger.debug("Core " + coreID + " uses a warm core process.");
+            else
             {
-                System.err.println("Could not create Core process!");
-                e.printStackTrace();
+                if(launchProfile.isCds())
+                {
+                    this.classArchive = CoreClassArchives.prepare(new File(coreLocation), version);
+                    processCommands.addAll(1, this.classArchive.getJvmArguments());
+                }
 
-                status = SimStatus.ERROR;
+                try {
+                    processBuilder.command(processCommands);
+                    process = processBuilder.start();
+                }
+                catch(Exception e)
+                {
+                    System.err.println("Could not create Core process!");
+                    e.printStackTrace();
 
-                running = false;
+                    status = SimStatus.ERROR;
 
-                return;
+                    running = false;
+
+                    return;
+                }
             }
 
+            bootPhase(CoreBootPhase.SPAWNED);
+            watchProcess(process);
+
             // Get stdin of JAR = outputstream of our app
             OutputStream stdin = process.getOutputStream();
             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(stdin));
 
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-            String logLine = "";
-            String errorLine = "";
+            //Output is read by the shared output pump, the first line shows the JVM of the core is up
+            Process coreProcess = process;
+            CoreLog log = SimCoreLogService.open(coreID);
+            SimCoreOutputService.CoreOutput output = SimCoreOutputService.register(process.getInputStream(), coreProcess::isAlive,
+                    log, line -> bootPhase(CoreBootPhase.JVM_UP));
 
-            while(!Thread.currentThread().isInterrupted() && !logLine.startsWith("SmartCar Core")) // wait until initialized
-            {
-                try {
-                    logLine = readLine(reader);
-                    if(logLine == null)
-                        break; //Input stream closed, exit boot status
-
-                    while(errorReader.ready() && !Thread.currentThread().isInterrupted() && errorLine != null)
-                    {
-                        errorLine = readLine(errorReader);
-                    }
-                }
-                catch(IOException e)
-                {
-                    if(!Thread.currentThread().isInterrupted())
-                    {
-                        System.err.println("Could not open input stream!");
-                        e.printStackTrace();
-
-                        status = SimStatus.ERROR;
-                        process.destroy();
-                        running = false;
-                        return;
-                    }
-                    else
-                        break; //System interrupted
-                }
+            try {
+                this.superviseCore(process, writer, output, log);
             }
+            finally {
+                output.close();
+                log.close();
+            }
+        }
 
-            System.out.println("Car core initialized. Status: running");
-            status = SimStatus.RUNNING;
-
-            try
-            {
-                while(!Thread.currentThread().isInterrupted() && logLine != null)
+        /**
+         * Waits for the core to end or for a stop request, sends the exit command on stop
+         */
+        private void superviseCore(Process process, BufferedWriter writer, SimCoreOutputService.CoreOutput output, CoreLog log)
+        {
+            try {
+                //Core is running once it connected to its car, see bootPhase
+                //The exit of the process ends the boot early, it is checked at the boot timeout otherwise
+                if(!process.waitFor(getBootTimeLeft(), TimeUnit.NANOSECONDS) && !isReady())
                 {
-                    logLine = readLine(reader);
-
-                    while(errorReader.ready() && !Thread.currentThread().isInterrupted() && errorLine != null)
-                    {
-                        errorLine = readLine(errorReader);
-                    }
+                    System.err.println("Core did not connect within " + BOOT_TIMEOUT + " s. Force shutdown.");
+                    process.destroyForcibly();
                 }
-            }
-            catch(IOException e)
-            {
-                if(!Thread.currentThread().isInterrupted())
-                {
-                    System.err.println("Could not read input stream!");
-                    e.printStackTrace();
 
-                    logLine = null;
-                }
-            }
+                process.waitFor();
 
-            if(logLine == null) {
-                System.out.println("Simulation stopped unexpected");
+                //Core process ended without stop request
+                output.awaitClosed(OUTPUT_DRAIN_TIMEOUT, TimeUnit.SECONDS);
+
+                System.out.println("Simulation stopped unexpected, core log: " + log.getFile());
                 status = SimStatus.ERROR;
-                process.destroy();
                 running = false;
                 return;
             }
+            catch(InterruptedException e) {
+                //Interrupted by stop()
+            }
+
+            //Stop is requested, the shutdown sequence has to complete
+            Thread.interrupted();
 
             //Send shutdown signal to process
             status = SimStatus.SHUTDOWN;
-            //EDITED
-            while (status == SimStatus.SHUTDOWN){
-                //Wait for acknowledge from frontend
-            }
+            long shutdownStart = System.nanoTime();
             System.out.println("Shutting down simulation");
             try {
                 // send exit command for clean shutdown
@@ -258,49 +521,30 @@ public class SimCore
                 return;
             }
 
-            //Reset cached lines
-            logLine = "";
-            errorLine = "";
-
             //Wait for core process to shutdown
             try
             {
-                while(logLine != null)
+                if(!process.waitFor(EXIT_TIMEOUT, TimeUnit.SECONDS))
                 {
-                    logLine = readLine(reader);
-
-                    while(errorReader.ready() && errorLine != null)
-                    {
-                        errorLine = readLine(errorReader);
-                    }
+                    System.err.println("Core did not exit within " + EXIT_TIMEOUT + " s. Force shutdown.");
+                    process.destroyForcibly();
                 }
-            }
-            catch(IOException e) {
-                if(!Thread.currentThread().isInterrupted())
-                {
-                    System.err.println("Could not read input stream!");
-                    e.printStackTrace();
+                else
+                    this.cleanExit = true;
 
-                    status = SimStatus.ERROR;
-                    process.destroy();
-                    running = false;
-                    return;
-                }
+                //Log remaining output of the core
+                output.awaitClosed(OUTPUT_DRAIN_TIMEOUT, TimeUnit.SECONDS);
             }
+            catch(InterruptedException e) {
+                System.err.println("Could not wait for core process to exit!");
 
-            try {
-                reader.close();
-            }
-            catch(IOException e) {
-                System.err.println("Could not close input stream!");
+                status = SimStatus.ERROR;
+                process.destroyForcibly();
+                running = false;
+                return;
             }
 
-            try {
-                errorReader.close();
-            }
-            catch(IOException e) {
-                System.err.println("Could not close error stream!");
-            }
+            SimFlightRecorder.coreBootPhase(coreID, "shutdown", System.nanoTime() - shutdownStart);
 
             System.out.println("Simulation stopped");
             status = SimStatus.OFF;
@@ -308,50 +552,39 @@ public class SimCore
         }
     }
 
-    private String readLine(BufferedReader reader) throws IOException
+    /**
+     * Hands the core process to the supervisor, which restarts the core if it crashes
+     */
+    private void watchProcess(Process process)
     {
-        final String[] line = {null};
-        final boolean[] exFlag = {false};
-        final String[] exMessage = {null};
-        Thread readThread;
+        ApplicationContext context = SpringContext.getAppContext();
 
-        if(reader != null)
-        {
-            readThread = new Thread(new Runnable()
-            {
-                @Override
-                public void run()
-                {
-                    try {
-                        line[0] = reader.readLine();
-                    }
-                    catch(IOException e) {
-                        //Could not open stream
-                        exFlag[0] = true;
-                        exMessage[0] = e.getMessage();
-                    }
-                }
-            });
+        if(context == null)
+            return;
 
-            //Start thread
-            readThread.start();
+        try {
+            context.getBean(SimCoreSupervisorService.class).watch(this, process);
+        }
+        catch(BeansException e) {
+            //No supervisor
+        }
+    }
 
-            //Wait for thread to finish or until thread is interrupted
-            while(readThread.isAlive() && !Thread.currentThread().isInterrupted());
+    /**
+     * @return Pre-launched core process of the pool, started with the arguments of this core, or null
+     */
+    private Process takeWarmCore()
+    {
+        ApplicationContext context = SpringContext.getAppContext();
 
-            if(Thread.currentThread().isInterrupted())
-                readThread.interrupt(); //Interrupt read thread
-            else
-            {
-                if(exFlag[0])
-                    throw new IOException(exMessage[0]); //IOException occurred during reading
-            }
-        }
+        if(context == null)
+            return null;
 
-        if(line[0] != null) {
-            System.out.println("#Core: "+line[0]);
+        try {
+            return context.getBean(SimCorePoolService.class).take(coreLocation, launchProfile, runArguments);
+        }
+        catch(BeansException e) {
+            return null; //No pool
         }
-
-        return line[0];
     }
 }
@@ -0,0 +1,30 @@
+package be.uantwerpen.sc.models.sim;
+
+import be.uantwerpen.sc.tools.clock.SimTimer;
+
+/**
+ * Bot whose simulation is driven by the shared SimSchedulerService
+ */
+public interface SimTickable
+{
+    /**
+     * Called on the tick thread before the first tick
+     * @param timer Timer running on the tick thread of the bot, tasks run between ticks
+     */
+    default void scheduled(SimTimer timer)
+    {
+    }
+
+    /**
+     * Advances the simulation of the bot by one tick
+     * Simulation time is read from the clock of the scheduler
+     * @return False when the bot no longer wants to be ticked
+     */
+    boolean tick();
+
+    /**
+     * Called once after the bot is removed from the scheduler
+     * Runs on a lifecycle thread, so blocking shutdown work is allowed here
+     */
+    void unscheduled();
+}
@@ -1,9 +1,14 @@
 package be.uantwerpen.sc.models.sim.deployer;
 
-import java.io.*;
+import be.uantwerpen.sc.services.sockets.SimLineCodec;
+
+import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Created by Thomas on 5/05/2017.
@@ -13,8 +18,9 @@ import java.net.SocketTimeoutException;
 public class SimSocket
 {
     private Socket socket;
-    private BufferedReader reader;
-    private BufferedWriter writer;
+    private ReadableByteChannel reader;
+    private WritableByteChannel writer;
+    private SimLineCodec codec;
 
     private SimSocket()
     {
@@ -24,12 +30,16 @@ public class SimSocket
     public SimSocket(Socket socket)
     {
         this.socket = socket;
+        this.codec = new SimLineCodec();
     }
 
     public void close() throws IOException
     {
-        this.reader.close();
-        this.writer.close();
+        if(this.reader != null)
+            this.reader.close();
+
+        if(this.writer != null)
+            this.writer.close();
 
         this.socket.close();
     }
@@ -59,14 +69,28 @@ public class SimSocket
 
     public String getMessage()
     {
-        String message = null;
+        CharSequence line = this.getLine();
+
+        return line != null ? line.toString() : null;
+    }
 
+    /**
+     * @return Next received line as view on the read buffer, valid until the next read, or null if no line is available
+     */
+    public CharSequence getLine()
+    {
         if(this.socket.isClosed())
         {
             //Socket is closed
             return null;
         }
 
+        //Lines of an earlier read come first
+        CharSequence line = this.codec.nextLine();
+
+        if(line != null)
+            return line;
+
         try
         {
             openReader();
@@ -83,12 +107,12 @@ public class SimSocket
         {
             try
             {
-                message = this.reader.readLine();
-
-                if(message == null)
+                if(this.codec.read(this.reader) < 0)
                 {
                     //Socket is closed by the client
                     this.close();
+
+                    return null;
                 }
             }
             catch(SocketTimeoutException e)
@@ -100,12 +124,23 @@ public class SimSocket
         {
             //Could not read input stream
             //System.err.println("Could not read input stream!");
+
+            if(this.codec.isFull())
+            {
+                //Line longer than the read buffer
+                this.closeQuietly();
+            }
         }
 
-        return message;
+        return this.codec.nextLine();
     }
 
     public boolean sendMessage(String message)
+    {
+        return this.sendMessage(message, SimLineCodec.Ending.NONE);
+    }
+
+    public boolean sendMessage(CharSequence message, SimLineCodec.Ending ending)
     {
         boolean success = true;
 
@@ -129,8 +164,8 @@ public class SimSocket
 
         try
         {
-            this.writer.write(message);
-            this.writer.flush();
+            //Blocking channel, the codec writes everything at once
+            this.codec.write(this.writer, message, ending);
         }
         catch(IOException e)
         {
@@ -143,11 +178,24 @@ public class SimSocket
         return success;
     }
 
+    private void closeQuietly()
+    {
+        try
+        {
+            this.close();
+        }
+        catch(IOException e)
+        {
+            //Already closed
+        }
+    }
+
     private void openReader() throws IOException
     {
         if(this.reader == null && this.socket != null)
         {
-            reader = new BufferedReader(new InputStreamReader(this.socket.getInputStream()));
+            //Stream based channel, reading honours the socket time-out
+            reader = Channels.newChannel(this.socket.getInputStream());
         }
     }
 
@@ -155,7 +203,7 @@ public class SimSocket
     {
         if(this.writer == null && this.socket != null)
         {
-            writer = new BufferedWriter(new OutputStreamWriter(this.socket.getOutputStream()));
+            writer = this.socket.getChannel() != null ? this.socket.getChannel() : Channels.newChannel(this.socket.getOutputStream());
         }
     }
 }
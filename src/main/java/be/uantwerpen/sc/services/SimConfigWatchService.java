@@ -0,0 +1,141 @@
+package be.uantwerpen.sc.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches configuration files and reloads them when they change
+ * One WatchService thread for all files, changes are collected until the files are quiet so an editor saving in steps causes one reload
+ */
+@Service
+public class SimConfigWatchService
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimConfigWatchService.class);
+
+    /**
+     * Time without changes before the changed files are reloaded (in ms)
+     */
+    private static final long QUIET_TIME = 200;
+
+    /**
+     * Reload actions per watched file
+     */
+    private final Map<Path, List<Runnable>> reloads = new ConcurrentHashMap<>();
+
+    private WatchService watchService;
+    private Thread watchThread;
+
+    @PreDestroy
+    public synchronized void shutdown()
+    {
+        if(this.watchService == null)
+            return;
+
+        try {
+            this.watchService.close();
+        }
+        catch(IOException e) {
+            logger.warn("Could not close configuration watch service: " + e.getMessage());
+        }
+
+        this.watchService = null;
+    }
+
+    /**
+     * Calls the reload action on the watch thread when the file is modified, created or replaced
+     * @param file Configuration file
+     * @param reload Reload action
+     */
+    public synchronized void watch(File file, Runnable reload)
+    {
+        Path path = file.toPath().toAbsolutePath().normalize();
+
+        try {
+            if(this.watchService == null)
+            {
+                this.watchService = FileSystems.getDefault().newWatchService();
+                this.watchThread = new Thread(this::run, "SimConfigWatch");
+                this.watchThread.setDaemon(true);
+                this.watchThread.start();
+            }
+
+            path.getParent().register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        catch(IOException e) {
+            logger.warn("Could not watch " + path + ", changes are not reloaded: " + e.getMessage());
+            return;
+        }
+
+        this.reloads.computeIfAbsent(path, p -> new CopyOnWriteArrayList<>()).add(reload);
+    }
+
+    private void run()
+    {
+        WatchService watcher = this.watchService;
+
+        try {
+            while(true)
+            {
+                Set<Path> changed = new LinkedHashSet<>();
+                WatchKey key = watcher.take();
+
+                //Collect the changes until the files are quiet
+                while(key != null)
+                {
+                    Path directory = (Path) key.watchable();
+
+                    for(WatchEvent<?> event : key.pollEvents())
+                    {
+                        if(event.context() instanceof Path)
+                            changed.add(directory.resolve((Path) event.context()));
+                    }
+
+                    key.reset();
+                    key = watcher.poll(QUIET_TIME, TimeUnit.MILLISECONDS);
+                }
+
+                for(Path path : changed)
+                {
+                    List<Runnable> actions = this.reloads.get(path);
+
+                    if(actions == null)
+                        continue;
+
+                    logger.info("Configuration file " + path + " changed, reloading.");
+
+                    for(Runnable action : actions)
+                    {
+                        try {
+                            action.run();
+                        }
+                        catch(RuntimeException e) {
+                            logger.error("Could not reload " + path + "!", e);
+                        }
+                    }
+                }
+            }
+        }
+        catch(InterruptedException | ClosedWatchServiceException e) {
+            //Service is shut down
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package be.uantwerpen.sc.services;
+
+import be.uantwerpen.sc.tools.corehost.CoreLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs of the cores
+ * The output of every core goes to its own rolling log file (core-<bot id>.log) with the last lines kept in memory,
+ * instead of every line through the console of the simulator
+ */
+@Service
+public class SimCoreLogService
+{
+    /**
+     * Interval of flushing the log files (in ms)
+     */
+    private static final long FLUSH_INTERVAL = 1000;
+
+    private static String logDirectory = "logs/cores";
+    private static long maxFileSize = 10L << 20;
+    private static int maxFiles = 3;
+    private static int tailLines = 200;
+    private static boolean echo = false;
+    private static int echoSample = 1;
+
+    /**
+     * Logs per core id (the bot id), kept after the core stopped until the bot is removed
+     */
+    private static final Map<Integer, CoreLog> logs = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService flusher = null;
+
+    @Value("${sim.core.log.dir:logs/cores}")
+    private void setLogDirectory(String directory) {
+        logDirectory = directory;
+    }
+
+    @Value("${sim.core.log.size:10485760}")
+    private void setMaxFileSize(long size) {
+        maxFileSize = size;
+    }
+
+    @Value("${sim.core.log.files:3}")
+    private void setMaxFiles(int files) {
+        maxFiles = files;
+    }
+
+    @Value("${sim.core.log.tail:200}")
+    private void setTailLines(int lines) {
+        tailLines = lines;
+    }
+
+    @Value("${sim.core.log.echo:false}")
+    private void setEcho(boolean enabled) {
+        echo = enabled;
+    }
+
+    @Value("${sim.core.log.echo.sample:1}")
+    private void setEchoSample(int sample) {
+        echoSample = Math.max(sample, 1);
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        synchronized(SimCoreLogService.class)
+        {
+            if(flusher != null)
+                flusher.shutdown();
+
+            flusher = null;
+        }
+
+        for(CoreLog log : logs.values())
+            log.close();
+    }
+
+    /**
+     * @param coreId Id of the core (bot id)
+     * @return Log of the core, created on first use
+     */
+    public static CoreLog open(int coreId)
+    {
+        startFlusher();
+
+        return logs.computeIfAbsent(coreId, id -> new CoreLog(id, new File(logDirectory, "core-" + id + ".log"), maxFileSize, maxFiles, tailLines, echo ? echoSample : 0));
+    }
+
+    /**
+     * Closes and forgets the log of a removed bot, the log file stays on disk
+     * @param botId Id of the bot
+     */
+    public static void remove(long botId)
+    {
+        CoreLog log = logs.remove((int) botId);
+
+        if(log != null)
+            log.close();
+    }
+
+    /**
+     * @param botId Id of the bot
+     * @return Last lines of the core of the bot, oldest first, or null if the bot never ran a core
+     */
+    public static List<String> getRecentLog(long botId)
+    {
+        CoreLog log = logs.get((int) botId);
+
+        return log != null ? log.getTail() : null;
+    }
+
+    /**
+     * @param botId Id of the bot
+     * @return Log file of the core of the bot, null if the bot never ran a core
+     */
+    public static File getLogFile(long botId)
+    {
+        CoreLog log = logs.get((int) botId);
+
+        return log != null ? log.getFile() : null;
+    }
+
+    private static synchronized void startFlusher()
+    {
+        if(flusher != null)
+            return;
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SimCoreLog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        flusher.scheduleWithFixedDelay(() -> {
+            for(CoreLog log : logs.values())
+                log.flush();
+        }, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,327 @@
+package be.uantwerpen.sc.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Reads the console output of all core processes on a few shared pump threads
+ * Process streams can not be selected, so every pump polls the available bytes of its cores
+ * and only reads what is there, into a bounded buffer per core
+ * An idle pump waits longer after every empty round, output or a new core resets the wait
+ * Complete lines are handed to the listeners of the core (boot detection, log forwarding) on the pump thread
+ */
+@Service
+public class SimCoreOutputService
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimCoreOutputService.class);
+
+    /**
+     * Output buffer of one core, longer lines are split
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Wait of a pump after the first round without output, doubled every next empty round (in ms)
+     */
+    private static final long MIN_IDLE_WAIT = 1;
+
+    /**
+     * Longest wait of an idle pump (in ms)
+     */
+    private static final long MAX_IDLE_WAIT = 100;
+
+    /**
+     * Number of pump threads
+     */
+    private static int pumpCount = 1;
+
+    private static Pump[] pumps = null;
+    private static final AtomicInteger nextPump = new AtomicInteger();
+
+    @Value("${sim.core.output.threads:1}")
+    private void setPumpCount(int threads) {
+        pumpCount = Math.max(threads, 1);
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        synchronized(SimCoreOutputService.class)
+        {
+            if(pumps == null)
+                return;
+
+            for(Pump pump : pumps)
+            {
+                pump.running = false;
+                LockSupport.unpark(pump.thread);
+            }
+
+            pumps = null;
+        }
+    }
+
+    /**
+     * Starts pumping the output of a core
+     * @param output Console output of the core process
+     * @param alive Tells whether the core process still runs, the output is read until its end afterwards
+     * @param listeners Consumers of the output lines, called on the pump thread
+     * @return Handle of the pumped output
+     */
+    public static CoreOutput register(InputStream output, BooleanSupplier alive, Listener... listeners)
+    {
+        CoreOutput coreOutput = new CoreOutput(output, alive, Arrays.asList(listeners));
+        nextPump().add(coreOutput);
+
+        return coreOutput;
+    }
+
+    private static synchronized Pump nextPump()
+    {
+        if(pumps == null)
+        {
+            pumps = new Pump[pumpCount];
+
+            for(int i = 0; i < pumpCount; i++)
+            {
+                pumps[i] = new Pump();
+
+                Thread pumpThread = new Thread(pumps[i], "SimCoreOutput-" + i);
+                pumpThread.setDaemon(true);
+                pumps[i].thread = pumpThread;
+                pumpThread.start();
+            }
+
+            logger.info("Core output pump started with " + pumpCount + " threads.");
+        }
+
+        return pumps[Math.floorMod(nextPump.getAndIncrement(), pumps.length)];
+    }
+
+    /**
+     * Consumer of the output lines of a core
+     */
+    @FunctionalInterface
+    public interface Listener
+    {
+        void onLine(String line);
+    }
+
+    /**
+     * Pumped output of one core
+     */
+    public static class CoreOutput
+    {
+        private final InputStream input;
+        private final BooleanSupplier alive;
+        private final List<Listener> listeners;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int length;
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        private CoreOutput(InputStream input, BooleanSupplier alive, List<Listener> listeners)
+        {
+            this.input = input;
+            this.alive = alive;
+            this.listeners = listeners;
+            this.length = 0;
+        }
+
+        /**
+         * Waits until the output is read up to its end
+         * @return True if the output has ended
+         */
+        public boolean awaitClosed(long timeout, TimeUnit unit) throws InterruptedException
+        {
+            return this.closed.await(timeout, unit);
+        }
+
+        public boolean isClosed()
+        {
+            return this.closed.getCount() == 0;
+        }
+
+        /**
+         * Stops pumping and closes the output, remaining output is discarded
+         */
+        public void close()
+        {
+            if(this.isClosed())
+                return;
+
+            try {
+                this.input.close();
+            }
+            catch(IOException e) {
+                System.err.println("Could not close core output!");
+            }
+        }
+
+        /**
+         * Reads the available output
+         * @return True if output was read
+         */
+        private boolean pump()
+        {
+            try {
+                int available = this.input.available();
+                int space = this.buffer.length - this.length;
+
+                //Nothing available: only a stopped process can be read to its end without blocking
+                if(available > 0)
+                    space = Math.min(space, available);
+                else if(this.alive.getAsBoolean())
+                    return false;
+
+                int read = this.input.read(this.buffer, this.length, space);
+
+                if(read < 0)
+                {
+                    this.end();
+                    return false;
+                }
+
+                this.length += read;
+                this.dispatch();
+
+                return read > 0;
+            }
+            catch(IOException e) {
+                //Stream is closed
+                this.end();
+                return false;
+            }
+        }
+
+        /**
+         * Passes the complete lines in the buffer to the listeners
+         */
+        private void dispatch()
+        {
+            int start = 0;
+
+            for(int i = 0; i < this.length; i++)
+            {
+                if(this.buffer[i] == '\n')
+                {
+                    this.emit(start, i);
+                    start = i + 1;
+                }
+            }
+
+            //Line fills the whole buffer
+            if(start == 0 && this.length == this.buffer.length)
+            {
+                this.emit(0, this.length);
+                start = this.length;
+            }
+
+            System.arraycopy(this.buffer, start, this.buffer, 0, this.length - start);
+            this.length -= start;
+        }
+
+        private void emit(int start, int end)
+        {
+            if(end > start && this.buffer[end - 1] == '\r')
+                end--;
+
+            String line = new String(this.buffer, start, end - start, Charset.defaultCharset());
+
+            for(Listener listener : this.listeners)
+            {
+                try {
+                    listener.onLine(line);
+                }
+                catch(RuntimeException e) {
+                    logger.error("Core output listener failed!", e);
+                }
+            }
+        }
+
+        private void end()
+        {
+            //Last line without line ending
+            if(this.length > 0)
+            {
+                this.emit(0, this.length);
+                this.length = 0;
+            }
+
+            this.closed.countDown();
+        }
+    }
+
+    private static class Pump implements Runnable
+    {
+        private final Queue<CoreOutput> outputs = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+        private volatile Thread thread;
+
+        /**
+         * Set when a core is added, resets the wait of the pump
+         */
+        private volatile boolean added = false;
+
+        /**
+         * Adds the output of a new core, its boot output is picked up without the wait of an idle pump
+         */
+        private void add(CoreOutput output)
+        {
+            this.outputs.offer(output);
+            this.added = true;
+            LockSupport.unpark(this.thread);
+        }
+
+        @Override
+        public void run()
+        {
+            long idleWait = MIN_IDLE_WAIT;
+
+            while(this.running)
+            {
+                boolean busy = false;
+
+                for(CoreOutput output : this.outputs)
+                {
+                    if(output.pump())
+                        busy = true;
+
+                    if(output.isClosed())
+                        this.outputs.remove(output);
+                }
+
+                if(busy || this.added)
+                {
+                    this.added = false;
+                    idleWait = MIN_IDLE_WAIT;
+
+                    if(busy)
+                        continue;
+                }
+
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(idleWait));
+
+                if(Thread.interrupted())
+                    return;
+
+                idleWait = Math.min(idleWait * 2, MAX_IDLE_WAIT);
+            }
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package be.uantwerpen.sc.services;
+
+import be.uantwerpen.sc.models.sim.CoreLaunchProfile;
+import be.uantwerpen.sc.models.sim.SimCore;
+import be.uantwerpen.sc.tools.corehost.CoreClassLoaders;
+import be.uantwerpen.sc.tools.corehost.CoreLauncher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warm pool of core processes
+ * Keeps a number of core JVMs per core jar launched and loaded, waiting for the identity and ports of their car (see CoreLauncher)
+ * Starting a bot takes a warm core instead of booting a new JVM, the pool is refilled in the background at a limited launch rate
+ */
+@Service
+@DependsOn("simCoresService")
+public class SimCorePoolService
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimCorePoolService.class);
+
+    /**
+     * Maximum time a launched core gets to report it is ready (in seconds)
+     */
+    private static final long READY_TIMEOUT = 30;
+
+    /**
+     * Number of warm cores kept per core jar (0 = no pool)
+     */
+    @Value("${sim.core.pool.size:0}")
+    private int poolSize;
+
+    /**
+     * Maximum number of core launches per second while refilling
+     */
+    @Value("${sim.core.pool.rate:1}")
+    private double launchRate;
+
+    /**
+     * Warm cores per core jar location
+     */
+    private final Map<String, Queue<WarmCore>> pools = new ConcurrentHashMap<>();
+
+    /**
+     * JVM options of the warm cores per core jar location
+     */
+    private final Map<String, CoreLaunchProfile> profiles = new ConcurrentHashMap<>();
+
+    private final AtomicInteger warmCount = new AtomicInteger();
+
+    private Counter hits;
+    private Counter misses;
+
+    /**
+     * Directory with the launcher class, the class path of the warm cores
+     */
+    private Path launcherPath;
+
+    private Thread refillThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init()
+    {
+        if(!this.isEnabled())
+            return;
+
+        try {
+            this.launcherPath = extractLauncher();
+        }
+        catch(IOException e) {
+            logger.error("Could not extract the core launcher, warm pool is disabled!", e);
+            this.poolSize = 0;
+            return;
+        }
+
+        Gauge.builder("sim.core.pool.warm", this.warmCount, AtomicInteger::get)
+                .description("Core processes waiting for a bot")
+                .register(Metrics.globalRegistry);
+
+        this.hits = Counter.builder("sim.core.pool.takes").tag("result", "warm")
+                .description("Bot starts served by the warm pool")
+                .register(Metrics.globalRegistry);
+
+        this.misses = Counter.builder("sim.core.pool.takes").tag("result", "cold")
+                .description("Bot starts that had to launch a new core")
+                .register(Metrics.globalRegistry);
+
+        //Pool of the default car core, other cores are pooled once a bot asks for them
+        SimCore core = SimCoresService.getSimulationCore("car");
+
+        if(core != null && core.getClass() == SimCore.class)
+        {
+            this.profiles.putIfAbsent(core.getCoreLocation(), core.getLaunchProfile());
+            this.pools.putIfAbsent(core.getCoreLocation(), new ConcurrentLinkedQueue<>());
+        }
+
+        this.running = true;
+        this.refillThread = new Thread(this::refill, "SimCorePool");
+        this.refillThread.setDaemon(true);
+        this.refillThread.start();
+
+        logger.info("Core pool keeps " + this.poolSize + " warm cores per core jar, launching at most " + this.launchRate + " cores per second.");
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        this.running = false;
+
+        if(this.refillThread != null)
+            this.refillThread.interrupt();
+
+        for(Queue<WarmCore> pool : this.pools.values())
+        {
+            WarmCore core;
+
+            while((core = pool.poll()) != null)
+                core.discard();
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return this.poolSize > 0;
+    }
+
+    /**
+     * Takes a warm core of the core jar and hands it the arguments of its car
+     * @param coreLocation Core jar
+     * @param profile JVM options of the core, used to launch the warm cores of a new core jar
+     * @param arguments -Dkey=value arguments of the core
+     * @return Started core process, null if no warm core is available
+     */
+    public Process take(String coreLocation, CoreLaunchProfile profile, List<String> arguments)
+    {
+        if(!this.isEnabled())
+            return null;
+
+        this.profiles.putIfAbsent(coreLocation, profile);
+
+        Queue<WarmCore> pool = this.pools.computeIfAbsent(coreLocation, location -> new ConcurrentLinkedQueue<>());
+        WarmCore core;
+
+        try {
+            while((core = pool.poll()) != null)
+            {
+                this.warmCount.decrementAndGet();
+
+                if(core.assign(arguments))
+                {
+                    this.hits.increment();
+                    return core.process;
+                }
+
+                core.discard();
+            }
+
+            this.misses.increment();
+            return null;
+        }
+        finally {
+            synchronized(this.pools) {
+                this.pools.notifyAll(); //Refill
+            }
+        }
+    }
+
+    /**
+     * Launches missing cores, one at a time and at most launchRate per second
+     */
+    private void refill()
+    {
+        long interval = (long) (1000.0 / Math.max(this.launchRate, 0.001));
+
+        while(this.running)
+        {
+            boolean launched = false;
+
+            for(Map.Entry<String, Queue<WarmCore>> pool : this.pools.entrySet())
+            {
+                if(pool.getValue().size() >= this.poolSize)
+                    continue;
+
+                WarmCore core = this.launch(pool.getKey());
+
+                if(core != null)
+                {
+                    pool.getValue().offer(core);
+                    this.warmCount.incrementAndGet();
+                }
+
+                launched = true;
+                break;
+            }
+
+            try {
+                if(launched)
+                    Thread.sleep(interval);
+                else
+                {
+                    synchronized(this.pools) {
+                        this.pools.wait(1000);
+                    }
+                }
+            }
+            catch(InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Launches a core process and waits until it has loaded the core jar
+     * @return Warm core, null if the core could not be launched
+     */
+    private WarmCore launch(String coreLocation)
+    {
+        //Class data archives need a jar class path, warm cores only use the JVM options of the profile
+        ProcessBuilder processBuilder = new ProcessBuilder("java");
+        List<String> command = processBuilder.command();
+
+        command.addAll(this.profiles.getOrDefault(coreLocation, CoreLaunchProfile.DEFAULT).getJvmArguments());
+        command.addAll(Arrays.asList("-cp", this.launcherPath.toString(), CoreLauncher.class.getName(), coreLocation));
+        processBuilder.redirectErrorStream(true);
+
+        Process process;
+
+        try {
+            process = processBuilder.start();
+        }
+        catch(IOException e) {
+            logger.error("Could not launch warm core for " + coreLocation + "!", e);
+            return null;
+        }
+
+        WarmCore core = new WarmCore(process);
+
+        //Closes the output of a core that hangs, so the read below ends
+        Thread watchdog = new Thread(() -> {
+            try {
+                if(!process.waitFor(READY_TIMEOUT, TimeUnit.SECONDS) && !core.ready)
+                    process.destroyForcibly();
+            }
+            catch(InterruptedException e) {
+                //Pool is shut down
+            }
+        }, "SimCorePool-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+
+        try {
+            String line;
+
+            while((line = readLine(process.getInputStream())) != null)
+            {
+                if(line.equals(CoreLauncher.READY_MESSAGE))
+                {
+                    core.ready = true;
+                    watchdog.interrupt();
+                    return core;
+                }
+
+                //Not assigned to a bot yet, so there is no core log
+                logger.debug("Warm core for {}: {}", coreLocation, line);
+            }
+        }
+        catch(IOException e) {
+            logger.warn("Could not read warm core output: " + e.getMessage());
+        }
+
+        logger.warn("Warm core for " + coreLocation + " did not become ready.");
+        core.discard();
+
+        return null;
+    }
+
+    /**
+     * Reads one line byte by byte, the remaining output stays available for SimCore
+     */
+    private static String readLine(InputStream input) throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        int b;
+
+        while((b = input.read()) != '\n')
+        {
+            if(b < 0)
+                return line.length() > 0 ? line.toString() : null;
+
+            if(b != '\r')
+                line.append((char) b);
+        }
+
+        return line.toString();
+    }
+
+    /**
+     * Copies the launcher classes out of the simulator, they can not be loaded from inside a Spring Boot jar
+     * @return Class path directory of the launcher
+     */
+    private static Path extractLauncher() throws IOException
+    {
+        Path directory = new File(System.getProperty("java.io.tmpdir"), "simcore/launcher").toPath();
+
+        for(Class<?> launcherClass : new Class<?>[] {CoreLauncher.class, CoreClassLoaders.class, CoreClassLoaders.CoreJar.class})
+        {
+            String classFile = launcherClass.getName().replace('.', '/') + ".class";
+            Path target = directory.resolve(classFile);
+
+            Files.createDirectories(target.getParent());
+
+            try(InputStream input = CoreLauncher.class.getClassLoader().getResourceAsStream(classFile)) {
+                if(input == null)
+                    throw new IOException("Class file not found: " + classFile);
+
+                Files.copy(input, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        return directory;
+    }
+
+    private static class WarmCore
+    {
+        private final Process process;
+        private volatile boolean ready;
+
+        private WarmCore(Process process)
+        {
+            this.process = process;
+            this.ready = false;
+        }
+
+        /**
+         * Sends the arguments of the car to the launcher
+         * @return Success, false if the core process is gone
+         */
+        private boolean assign(List<String> arguments)
+        {
+            if(!this.process.isAlive())
+                return false;
+
+            StringBuilder command = new StringBuilder(CoreLauncher.START_COMMAND);
+
+            for(String argument : arguments)
+                command.append('\t').append(argument);
+
+            command.append('\n');
+
+            try {
+                OutputStream stdin = this.process.getOutputStream();
+                stdin.write(command.toString().getBytes(StandardCharsets.UTF_8));
+                stdin.flush();
+            }
+            catch(IOException e) {
+                return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * Ends the launcher: end of input makes it exit without starting the core
+         */
+        private void discard()
+        {
+            try {
+                this.process.getOutputStream().close();
+            }
+            catch(IOException e) {
+                //Process is gone
+            }
+
+            try {
+                if(!this.process.waitFor(1, TimeUnit.SECONDS))
+                    this.process.destroyForcibly();
+            }
+            catch(InterruptedException e) {
+                this.process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
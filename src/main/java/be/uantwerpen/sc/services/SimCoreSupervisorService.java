@@ -0,0 +1,277 @@
+package be.uantwerpen.sc.services;
+
+import be.uantwerpen.sc.models.sim.SimCore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Supervisor of the core processes
+ * A core process that exits without stop request has crashed, the supervisor restarts it with exponential backoff and jitter
+ * Restarts of all cores are spread to at most restart.rate per second, so a bad core jar does not restart the whole fleet at once
+ * A core that crashes more than restart.max times within restart.window is in a crash loop: it is given up and its bot is stopped
+ * Exits are reported by Process.onExit (JDK 9+), no thread waits for them
+ */
+@Service
+public class SimCoreSupervisorService
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimCoreSupervisorService.class);
+
+    /**
+     * Retry interval of a restart while the core is still shutting down after its crash (in ms)
+     */
+    private static final long RESTART_RETRY = 500;
+
+    /**
+     * Process.onExit, null before JDK 9
+     */
+    private static final Method onExitMethod = findOnExit();
+
+    /**
+     * Maximum number of restarts of a core within the window (0 = never restart)
+     */
+    @Value("${sim.core.restart.max:5}")
+    private int maxRestarts;
+
+    /**
+     * Time window of the crash loop detection (in seconds)
+     */
+    @Value("${sim.core.restart.window:300}")
+    private long window;
+
+    /**
+     * Delay of the first restart after a crash, doubled for every next crash within the window (in ms)
+     */
+    @Value("${sim.core.restart.backoff:1000}")
+    private long backoff;
+
+    /**
+     * Maximum delay of a restart (in ms)
+     */
+    @Value("${sim.core.restart.backoff.max:60000}")
+    private long maxBackoff;
+
+    /**
+     * Maximum number of core restarts per second over all cores
+     */
+    @Value("${sim.core.restart.rate:2}")
+    private double restartRate;
+
+    /**
+     * Crash times of the cores within the window (in ms)
+     */
+    private final Map<SimCore, Deque<Long>> crashes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Earliest time of the next restart of any core (in ms), only used on the supervisor thread
+     */
+    private long nextRestartSlot = 0L;
+
+    private ScheduledExecutorService executor;
+    private ExecutorService exitWaiters;
+
+    private Counter crashCounter;
+    private Counter restartCounter;
+    private Counter crashLoopCounter;
+
+    @PostConstruct
+    public void init()
+    {
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SimCoreSupervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.crashCounter = Counter.builder("sim.core.crashes")
+                .description("Core processes that exited without stop request")
+                .register(Metrics.globalRegistry);
+
+        this.restartCounter = Counter.builder("sim.core.restarts")
+                .description("Crashed cores restarted by the supervisor")
+                .register(Metrics.globalRegistry);
+
+        this.crashLoopCounter = Counter.builder("sim.core.crashloops")
+                .description("Cores given up after crashing too often, their bots are stopped")
+                .register(Metrics.globalRegistry);
+
+        Gauge.builder("sim.core.restarts.pending", this.pending, AtomicInteger::get)
+                .description("Crashed cores waiting for their restart")
+                .register(Metrics.globalRegistry);
+
+        if(onExitMethod == null)
+            logger.warn("Process.onExit is not available, core exits are awaited on a thread per core.");
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        this.executor.shutdownNow();
+
+        if(this.exitWaiters != null)
+            this.exitWaiters.shutdownNow();
+    }
+
+    /**
+     * Watches a started core process until it exits
+     * @param core Core of the process
+     * @param process Core process
+     */
+    public void watch(SimCore core, Process process)
+    {
+        this.onExit(process).thenRun(() -> this.executor.execute(() -> this.exited(core)));
+    }
+
+    /**
+     * @return Number of crashes of the core within the window
+     */
+    public int getCrashCount(SimCore core)
+    {
+        Deque<Long> times = this.crashes.get(core);
+
+        if(times == null)
+            return 0;
+
+        synchronized(times)
+        {
+            return times.size();
+        }
+    }
+
+    private void exited(SimCore core)
+    {
+        if(core.isStopRequested())
+        {
+            this.crashes.remove(core);
+            return;
+        }
+
+        this.crashCounter.increment();
+
+        long now = System.currentTimeMillis();
+        Deque<Long> times = this.crashes.computeIfAbsent(core, c -> new ArrayDeque<>());
+        int crashCount;
+
+        synchronized(times)
+        {
+            while(!times.isEmpty() && times.peekFirst() < now - TimeUnit.SECONDS.toMillis(this.window))
+                times.pollFirst();
+
+            times.addLast(now);
+            crashCount = times.size();
+        }
+
+        if(crashCount > this.maxRestarts)
+        {
+            this.crashes.remove(core);
+            this.crashLoopCounter.increment();
+
+            logger.error("Core " + core.getCoreID() + " crashed " + crashCount + " times within " + this.window + " s, giving up. "
+                    + "Crashes: " + (long) this.crashCounter.count() + ", restarts: " + (long) this.restartCounter.count()
+                    + ", cores given up: " + (long) this.crashLoopCounter.count() + ". Core log: " + SimCoreLogService.getLogFile(core.getCoreID()));
+
+            Runnable handler = core.getCrashLoopHandler();
+
+            if(handler != null)
+                handler.run();
+
+            return;
+        }
+
+        //Exponential backoff with jitter: half of the delay is fixed, the other half random
+        long delay = Math.min(this.backoff << Math.min(crashCount - 1, 20), this.maxBackoff);
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+
+        //Restarts of all cores are spread over time
+        long restartTime = Math.max(now + delay, this.nextRestartSlot);
+        this.nextRestartSlot = restartTime + (long) (1000.0 / Math.max(this.restartRate, 0.001));
+
+        logger.warn("Core " + core.getCoreID() + " crashed (" + crashCount + " times within " + this.window + " s), restart in " + (restartTime - now) + " ms.");
+
+        this.pending.incrementAndGet();
+        this.executor.schedule(() -> this.restart(core), restartTime - now, TimeUnit.MILLISECONDS);
+    }
+
+    private void restart(SimCore core)
+    {
+        if(core.isStopRequested())
+        {
+            this.pending.decrementAndGet();
+            this.crashes.remove(core);
+            return;
+        }
+
+        if(!core.restart())
+        {
+            //Core thread is still shutting down after the crash
+            this.executor.schedule(() -> this.restart(core), RESTART_RETRY, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        this.pending.decrementAndGet();
+        this.restartCounter.increment();
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Process> onExit(Process process)
+    {
+        if(onExitMethod != null)
+        {
+            try {
+                return (CompletableFuture<Process>) onExitMethod.invoke(process);
+            }
+            catch(ReflectiveOperationException e) {
+                logger.warn("Could not watch core process: " + e.getMessage());
+            }
+        }
+
+        //Before JDK 9: a waiting thread per process
+        synchronized(this)
+        {
+            if(this.exitWaiters == null)
+                this.exitWaiters = SimThreadService.newExecutor("SimCoreSupervisor-wait");
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                process.waitFor();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return process;
+        }, this.exitWaiters);
+    }
+
+    private static Method findOnExit()
+    {
+        try {
+            return Process.class.getMethod("onExit");
+        }
+        catch(NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package be.uantwerpen.sc.services;
 
+import be.uantwerpen.sc.models.sim.CoreLaunchProfile;
+import be.uantwerpen.sc.models.sim.FakeSimCore;
+import be.uantwerpen.sc.models.sim.HostedSimCore;
 import be.uantwerpen.sc.models.sim.SimBot;
 import be.uantwerpen.sc.models.sim.SimCore;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Document;
@@ -9,9 +13,15 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.PostConstruct;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Thomas on 5/05/2017.
@@ -23,6 +33,21 @@ public class SimCoresService
     private static String configFileLocation;
     private static String jarFileLocation;
 
+    /**
+     * Run the in-process fake core for every bot instead of the configured core jars
+     */
+    private static boolean fakeCores = false;
+
+    /**
+     * Run the configured core jars in their own process or hosted inside the simulator JVM
+     */
+    private static boolean hostedCores = false;
+
+    /**
+     * Connect in-process cores to their car over in-memory pipes instead of TCP
+     */
+    private static boolean memoryTransport = false;
+
     @Value("${configFile}")
     private void setConfigFileLocation(String configFile) {
         configFileLocation = configFile;
@@ -33,8 +58,48 @@ public class SimCoresService
         jarFileLocation = jarFile;
     }
 
+    @Value("${sim.core.fake:false}")
+    private void setFakeCores(boolean fakeCore) {
+        fakeCores = fakeCore;
+    }
+
+    @Value("${sim.core.host:process}")
+    private void setCoreHost(String coreHost) {
+        hostedCores = "inprocess".equalsIgnoreCase(coreHost);
+    }
+
+    @Value("${sim.core.transport:socket}")
+    private void setCoreTransport(String coreTransport) {
+        memoryTransport = "memory".equalsIgnoreCase(coreTransport);
+    }
+
+    /**
+     * @return True if the cars and their cores use the in-memory transport, only possible for in-process cores
+     */
+    public static boolean isMemoryTransport()
+    {
+        return memoryTransport && (fakeCores || hostedCores);
+    }
+
     private final static String coreConfigFile = "BotCoreConfig.xml";
 
+    /**
+     * Cores of the configuration file per bot type, replaced as a whole when the file is reloaded
+     */
+    private static volatile Map<String, CoreDefinition> coreDefinitions = null;
+
+    @Autowired(required = false)
+    private SimConfigWatchService configWatch;
+
+    @PostConstruct
+    public void init()
+    {
+        reloadCoreDefinitions();
+
+        if(this.configWatch != null)
+            this.configWatch.watch(new File(configFileLocation + coreConfigFile), SimCoresService::reloadCoreDefinitions);
+    }
+
     public static SimCore getSimulationCore(SimBot bot)
     {
         return getSimulationCore(bot.getType());
@@ -42,92 +107,172 @@ public class SimCoresService
 
     public static SimCore getSimulationCore(String type)
     {
-        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder documentBuilder;
-        Document document;
-        SimCore simCore = null;
+        if(fakeCores)
+            return new FakeSimCore();
+
+        Map<String, CoreDefinition> definitions = coreDefinitions;
 
+        if(definitions == null)
+        {
+            reloadCoreDefinitions();
+            definitions = coreDefinitions;
+        }
+
+        CoreDefinition definition = definitions.get(type);
+
+        if(definition == null)
+        {
+            System.err.println("Could not find core of type: " + type + " in the configuration file!");
+            return null;
+        }
+
+        SimCore simCore;
+
+        if(hostedCores)
+            simCore = new HostedSimCore(definition.location, definition.version);
+        else
+            simCore = new SimCore(definition.location, definition.version);
+
+        simCore.setLaunchProfile(definition.profile);
+
+        return simCore;
+    }
+
+    /**
+     * Parses the configuration file, the current cores are kept if the file can not be parsed
+     */
+    private static synchronized void reloadCoreDefinitions()
+    {
+        try {
+            Map<String, CoreDefinition> definitions = parseCoreDefinitions();
+
+            coreDefinitions = definitions;
+            System.out.println("Loaded " + definitions.size() + " core(s) of types " + definitions.keySet() + " from " + coreConfigFile);
+        }
+        catch(Exception e) {
+            System.err.println("Could not parse configuration file: " + coreConfigFile + "! " + e.getMessage());
+
+            if(coreDefinitions == null)
+                coreDefinitions = Collections.emptyMap();
+        }
+    }
+
+    private static Map<String, CoreDefinition> parseCoreDefinitions() throws Exception
+    {
         // The location is based on the development mode and the supplied location in the corresponding properties file
         File configFile = new File(configFileLocation + coreConfigFile);
 
         if(!configFile.exists() || configFile.isDirectory())
         {
-
             //Configuration file is not available
-            System.err.println("Configuration file: '" + configFile.getAbsolutePath() + "' not found!");
-            return null;
+            throw new Exception("Configuration file: '" + configFile.getAbsolutePath() + "' not found!");
         }
 
-        try
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        Document document = documentBuilder.parse(configFile);
+        document.getDocumentElement().normalize();
+
+        Map<String, CoreDefinition> definitions = new HashMap<>();
+        NodeList coreList = document.getElementsByTagName("core");
+
+        for(int i = 0; i < coreList.getLength(); i++)
         {
-            documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            document = documentBuilder.parse(configFile);
-            document.getDocumentElement().normalize();
+            Node coreNode = coreList.item(i);
 
-            NodeList coreList = document.getElementsByTagName("core");
+            if(coreNode.getNodeType() != Node.ELEMENT_NODE)
+                continue;
 
-            int i = 0;
-            boolean found = false;
+            Element element = (Element) coreNode;
+            String type = element.getAttribute("type");
 
-            while(i < coreList.getLength() && !found)
-            {
-                Node coreNode = coreList.item(i);
-                try {
-                    if(coreNode.getNodeType() == Node.ELEMENT_NODE)
+            try {
+                String coreLocation = getText(element, "jar");
+                String coreVersion = getText(element, "version");
+
+                if(coreLocation == null)
+                    throw new Exception("JAR attribute unknown!");
+
+                if(coreVersion == null)
+                    throw new Exception("VERSION attribute unknown!");
+
+                //Check if core file exists
+                if(!new File(coreLocation).exists())
+                {
+                    File locationTest = new File(jarFileLocation + coreLocation);
+
+                    if(!locationTest.exists())
                     {
-                        Element element = (Element) coreNode;
-                        String coreLocation;
-                        String coreVersion;
-
-                        if(element.getAttribute("type").equals(type))
-                        {
-                            try {
-                                coreLocation = element.getElementsByTagName("jar").item(0).getTextContent();
-
-                                //Check if core file exists
-                                if(!new File(coreLocation).exists())
-                                {
-                                    File locationTest = new File(jarFileLocation + coreLocation);
-
-                                    if(!locationTest.exists()) {
-                                        //Core file can not be found in filesystem!
-                                        System.err.println("JAR file: '" + locationTest.getAbsolutePath() + "' can not be found!");
-                                        i++;
-                                        continue;
-                                    }
-                                }
-                            }
-                            catch(Exception e) {
-                                throw new Exception("JAR attribute unknown!");
-                            }
-
-                            try {
-                                coreVersion = element.getElementsByTagName("version").item(0).getTextContent();
-                            }
-                            catch(Exception e) {
-                                throw new Exception("VERSION attribute unknown!");
-                            }
-
-                            simCore = new SimCore(jarFileLocation + coreLocation, coreVersion);
-                            found = true;
-                        }
+                        //Core file can not be found in filesystem!
+                        System.err.println("JAR file: '" + locationTest.getAbsolutePath() + "' can not be found!");
+                        continue;
                     }
+                }
+
+                CoreLaunchProfile profile;
 
-                    i++;
+                try {
+                    profile = parseLaunchProfile(element);
                 }
-                catch(Exception e) {
-                    System.err.println("Failed to parse Core configuration. Configuration file contains errors! Exception: " + e.getMessage());
+                catch(IllegalArgumentException e) {
+                    throw new Exception("PROFILE invalid: " + e.getMessage());
                 }
-            }
 
-            if(!found)
-                System.err.println("Could not find core of type: " + type + " in the configuration file!");
-        }
-        catch(Exception e) {
-            System.err.println("Could not parse configuration file: " + coreConfigFile + "!");
-            e.printStackTrace();
+                //First core of a type is used
+                if(definitions.putIfAbsent(type, new CoreDefinition(jarFileLocation + coreLocation, coreVersion, profile)) != null)
+                    System.err.println("Core of type: " + type + " is configured more than once, the first one is used.");
+            }
+            catch(Exception e) {
+                System.err.println("Failed to parse Core configuration. Configuration file contains errors! Exception: " + e.getMessage());
+            }
         }
 
-        return simCore;
+        return Collections.unmodifiableMap(definitions);
+    }
+
+    /**
+     * @param coreElement Core element of the configuration
+     * @return JVM options of the profile element of the core, the default profile if the core has none
+     */
+    private static CoreLaunchProfile parseLaunchProfile(Element coreElement)
+    {
+        NodeList profiles = coreElement.getElementsByTagName("profile");
+
+        if(profiles.getLength() == 0)
+            return CoreLaunchProfile.DEFAULT;
+
+        Element profile = (Element) profiles.item(0);
+        NodeList optionList = profile.getElementsByTagName("option");
+        List<String> options = new ArrayList<>();
+
+        for(int i = 0; i < optionList.getLength(); i++)
+            options.add(optionList.item(i).getTextContent().trim());
+
+        return new CoreLaunchProfile(getText(profile, "heap"), getText(profile, "gc"), getText(profile, "tiered"),
+                Boolean.parseBoolean(getText(profile, "cds")), options);
+    }
+
+    private static String getText(Element element, String tag)
+    {
+        NodeList nodes = element.getElementsByTagName(tag);
+
+        return nodes.getLength() > 0 ? nodes.item(0).getTextContent().trim() : null;
+    }
+
+    /**
+     * Validated core of the configuration file
+     */
+    private static class CoreDefinition
+    {
+        private final String location;
+        private final String version;
+        private final CoreLaunchProfile profile;
+
+        private CoreDefinition(String location, String version, CoreLaunchProfile profile)
+        {
+            this.location = location;
+            this.version = version;
+            this.profile = profile;
+        }
     }
 }
\ No newline at end of file
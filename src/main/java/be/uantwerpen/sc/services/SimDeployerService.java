@@ -4,10 +4,15 @@ import be.uantwerpen.sc.Messages.ServerMessage;
 import be.uantwerpen.sc.Messages.WorkerJob;
 import be.uantwerpen.sc.models.sim.SimBot;
 import be.uantwerpen.sc.models.sim.SimCar;
+import be.uantwerpen.sc.models.sim.SimStatus;
 import be.uantwerpen.sc.models.sim.WebSocket.SocketCallback;
 import be.uantwerpen.sc.models.sim.WebSocket.WorkerClient;
 import be.uantwerpen.sc.models.sim.deployer.Log;
+import be.uantwerpen.sc.tools.jfr.SimFlightRecorder;
 //import com.sun.xml.internal.bind.v2.TODO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,8 +22,11 @@ import org.springframework.core.env.Environment;
 import org.springframework.messaging.simp.stomp.StompSession;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 /**
@@ -51,7 +59,12 @@ public class SimDeployerService implements  SocketCallback {
     /**
      * Map of all the simulated vehicles and their simulation identifiers
      */
-    private static HashMap<Long, SimBot> simulatedVehicles = new HashMap<>();
+    private static Map<Long, SimBot> simulatedVehicles = new ConcurrentHashMap<>();
+
+    /**
+     * Received jobs per type
+     */
+    private final Map<WorkerJob, Counter> jobCounters = new EnumMap<>(WorkerJob.class);
 
     /**
      * ID of the Worker given by the Server
@@ -72,6 +85,26 @@ public class SimDeployerService implements  SocketCallback {
     public SimDeployerService() throws IOException {
     }
 
+    /**
+     * Registers the bot counts per status and the job counters
+     */
+    @PostConstruct
+    private void registerMeters() {
+        for(SimStatus status : SimStatus.values()) {
+            Gauge.builder("sim.bots", simulatedVehicles, vehicles -> vehicles.values().stream().filter(bot -> bot.getStatus() == status).count())
+                    .tag("status", status.name().toLowerCase())
+                    .description("Simulated bots per status")
+                    .register(Metrics.globalRegistry);
+        }
+
+        for(WorkerJob job : WorkerJob.values()) {
+            jobCounters.put(job, Counter.builder("sim.worker.jobs")
+                    .tag("job", job.name().toLowerCase())
+                    .description("Jobs received from the server")
+                    .register(Metrics.globalRegistry));
+        }
+    }
+
     /**
      * Start sequence, attempts to start WorkerClient and thus tries to open sockets
      */
@@ -99,7 +132,10 @@ public class SimDeployerService implements  SocketCallback {
     //Parses a websocket message
     @Override
     public boolean parseMessage(ServerMessage message) {
+        long start = System.nanoTime();
         boolean result = false;
+        if(message.getJob() != null)
+            jobCounters.get(message.getJob()).increment();
         if(message.getWorkerID() == ID || message.getJob() == WorkerJob.CONNECTION){
             if (message.getJob() == WorkerJob.BOT) {    //Create a Bot
                 System.out.println("creating bot " + message.getBotID());
@@ -152,6 +188,8 @@ public class SimDeployerService implements  SocketCallback {
             }
         }
 
+        SimFlightRecorder.workerMessage(message.getBotID(), String.valueOf(message.getJob()), result, System.nanoTime() - start);
+
         return result;
     }
 
@@ -239,6 +277,7 @@ public class SimDeployerService implements  SocketCallback {
         if (simulatedVehicles.containsKey(simulationID)) {
             if (simulatedVehicles.get(simulationID).remove()) {
                 simulatedVehicles.remove(simulationID);
+                SimCoreLogService.remove(simulationID);
                 //Log.logInfo("SIMDEPLOYER", "Vehicle with ID " + simulationID + " killed.");
                 logger.info("Vehicle with ID " + simulationID + " killed.");
                 return true;
@@ -1,6 +1,9 @@
 package be.uantwerpen.sc.services;
 
 import be.uantwerpen.sc.models.sim.SimCar;
+import be.uantwerpen.sc.services.sockets.SimPipeService;
+import be.uantwerpen.sc.services.sockets.SimSelectorService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -19,11 +22,49 @@ public class SimFactory {
     @Value("#{new Integer(${robotbackend.port})}")
     int robotBackendPort;
 
+    /**
+     * Maximum number of events a car sends in one write
+     */
+    @Value("${sim.events.batch.size:64}")
+    int eventBatchSize;
+
+    /**
+     * Time events may wait to be sent together with later events (in ms)
+     */
+    @Value("${sim.events.batch.delay:0}")
+    long eventBatchDelay;
+
+    /**
+     * Maximum number of core commands a car processes per tick
+     */
+    @Value("${sim.tasks.budget:32}")
+    int commandBudget;
+
+    /**
+     * Shared scheduler driving the simulated cars
+     */
+    @Autowired
+    private SimSchedulerService simScheduler;
+
+    /**
+     * Shared socket selector for the core connections of the cars
+     */
+    @Autowired
+    private SimSelectorService simSelector;
+
     public SimCar createSimCar(long id) {
         SimCar car = new SimCar();
         car.setId(id);
         car.setRobotBackendIP(robotBackendIP);
         car.setRobotBackendPort(robotBackendPort);
+        car.setScheduler(simScheduler);
+        car.setEventBatching(eventBatchSize, eventBatchDelay);
+        car.setCommandBudget(commandBudget);
+
+        if(SimCoresService.isMemoryTransport())
+            car.setSocketServices(new SimPipeService(), new SimPipeService());
+        else
+            car.setSocketServices(simSelector.newTaskConnectionService(), simSelector.newEventConnectionService());
 
         return car;
     }
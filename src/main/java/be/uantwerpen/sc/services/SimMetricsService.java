@@ -0,0 +1,252 @@
+package be.uantwerpen.sc.services;
+
+import be.uantwerpen.sc.services.sockets.SimLineCodec;
+import be.uantwerpen.sc.tools.metrics.TickMetrics;
+import be.uantwerpen.sc.tools.smartcar.handlers.EventHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Metrics of the simulator
+ * Meters are registered on the global Micrometer registry by the services, bots and handlers that own them,
+ * this service publishes them over JMX and on a local HTTP endpoint in the Prometheus text format
+ * The endpoint also serves the recent output of the cores, see SimCoreLogService
+ */
+@Service
+public class SimMetricsService
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimMetricsService.class);
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * Publish the metrics as MBeans
+     */
+    @Value("${sim.metrics.jmx:true}")
+    private boolean jmxEnabled;
+
+    /**
+     * Port of the HTTP endpoint on the loopback address (0 = no endpoint)
+     */
+    @Value("${sim.metrics.port:9404}")
+    private int port;
+
+    @Autowired
+    private SimSchedulerService simScheduler;
+
+    private PrometheusMeterRegistry prometheusRegistry;
+    private JmxMeterRegistry jmxRegistry;
+    private HttpServer httpServer;
+
+    @PostConstruct
+    public void init()
+    {
+        this.prometheusRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        Metrics.addRegistry(this.prometheusRegistry);
+
+        if(this.jmxEnabled)
+        {
+            this.jmxRegistry = new JmxMeterRegistry(JmxConfig.DEFAULT, Clock.SYSTEM);
+            Metrics.addRegistry(this.jmxRegistry);
+        }
+
+        this.registerMeters(Metrics.globalRegistry);
+
+        if(this.port > 0)
+        {
+            try {
+                this.startEndpoint();
+                logger.info("Metrics available on http://localhost:" + this.httpServer.getAddress().getPort() + "/metrics");
+            }
+            catch(IOException e) {
+                logger.error("Could not start metrics endpoint on port " + this.port + "!", e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if(this.httpServer != null)
+            this.httpServer.stop(0);
+
+        Metrics.removeRegistry(this.prometheusRegistry);
+        this.prometheusRegistry.close();
+
+        if(this.jmxRegistry != null)
+        {
+            Metrics.removeRegistry(this.jmxRegistry);
+            this.jmxRegistry.close();
+        }
+    }
+
+    /**
+     * @return Current value of all meters in the Prometheus text format
+     */
+    public String scrape()
+    {
+        return this.prometheusRegistry.scrape();
+    }
+
+    /**
+     * Registers the meters of the shared simulator parts: sockets, scheduler and car ticks
+     */
+    private void registerMeters(MeterRegistry registry)
+    {
+        FunctionCounter.builder("sim.sockets.bytes", this, service -> SimLineCodec.getBytesRead())
+                .tag("direction", "in")
+                .description("Bytes received from the cores")
+                .baseUnit("bytes")
+                .register(registry);
+
+        FunctionCounter.builder("sim.sockets.bytes", this, service -> SimLineCodec.getBytesWritten())
+                .tag("direction", "out")
+                .description("Bytes sent to the cores")
+                .baseUnit("bytes")
+                .register(registry);
+
+        Gauge.builder("sim.scheduler.bots", this.simScheduler, SimSchedulerService::getBotCount)
+                .description("Bots driven by the tick workers")
+                .register(registry);
+
+        for(int i = 0; i < this.simScheduler.getWorkerCount(); i++)
+        {
+            final int worker = i;
+
+            Gauge.builder("sim.scheduler.worker.bots", this.simScheduler, service -> service.getBotsPerWorker()[worker])
+                    .tag("worker", String.valueOf(worker))
+                    .description("Bots driven by one tick worker")
+                    .register(registry);
+        }
+
+        Gauge.builder("sim.scheduler.tick.duration", this.simScheduler, SimSchedulerService::getTickDuration)
+                .description("Duration of the slowest last tick over all workers")
+                .baseUnit("milliseconds")
+                .register(registry);
+
+        FunctionCounter.builder("sim.scheduler.overruns", this.simScheduler, SimSchedulerService::getOverrunCount)
+                .description("Worker ticks that did not finish within the tick period")
+                .register(registry);
+
+        FunctionCounter.builder("sim.events.flushes", this, service -> EventHandler.getTotalFlushCount())
+                .description("Writes used to send events to the cores")
+                .register(registry);
+
+        FunctionCounter.builder("sim.events.sent", this, service -> EventHandler.getTotalEventCount())
+                .description("Events sent to the cores")
+                .register(registry);
+
+        Gauge.builder("sim.events.per_flush", this, service -> EventHandler.getTotalEventsPerFlush())
+                .description("Average number of events per write over all cars")
+                .register(registry);
+
+        FunctionCounter.builder("sim.car.ticks", this, service -> TickMetrics.getGlobalTickCount())
+                .description("Simulation ticks of all cars")
+                .register(registry);
+
+        FunctionCounter.builder("sim.car.tick.overruns", this, service -> TickMetrics.getGlobalOverrunCount())
+                .description("Car ticks that started more than half a tick period late")
+                .register(registry);
+
+        for(TickMetrics.Timer timer : TickMetrics.Timer.values())
+        {
+            String name = timer.name().toLowerCase();
+
+            Gauge.builder("sim.car.tick.time", timer, t -> TickMetrics.getGlobalHistogram(t).getValueAtPercentile(50.0))
+                    .tags("timer", name, "quantile", "0.5")
+                    .baseUnit("microseconds")
+                    .register(registry);
+
+            Gauge.builder("sim.car.tick.time", timer, t -> TickMetrics.getGlobalHistogram(t).getValueAtPercentile(99.0))
+                    .tags("timer", name, "quantile", "0.99")
+                    .baseUnit("microseconds")
+                    .register(registry);
+
+            Gauge.builder("sim.car.tick.time", timer, t -> TickMetrics.getGlobalHistogram(t).getMaxValue())
+                    .tags("timer", name, "quantile", "1.0")
+                    .baseUnit("microseconds")
+                    .register(registry);
+        }
+    }
+
+    private void startEndpoint() throws IOException
+    {
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), this.port), 0);
+
+        this.httpServer.createContext("/metrics", exchange -> {
+            byte[] body = this.scrape().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+
+            try(OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+
+        //Recent output of the core of a bot: /cores/<bot id>/log
+        this.httpServer.createContext("/cores/", exchange -> {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            List<String> lines = null;
+
+            if(path.length == 4 && path[3].equals("log"))
+            {
+                try {
+                    lines = SimCoreLogService.getRecentLog(Long.parseLong(path[2]));
+                }
+                catch(NumberFormatException e) {
+                    //Not a bot id
+                }
+            }
+
+            if(lines == null)
+            {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] body = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try(OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SimMetrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.httpServer.setExecutor(executor);
+        this.httpServer.start();
+    }
+}
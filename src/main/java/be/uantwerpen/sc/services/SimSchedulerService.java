@@ -0,0 +1,372 @@
+package be.uantwerpen.sc.services;
+
+import be.uantwerpen.sc.models.sim.SimTickable;
+import be.uantwerpen.sc.tools.clock.SimClock;
+import be.uantwerpen.sc.tools.clock.SimTimerWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Shared simulation scheduler
+ * Drives the simulation ticks of all registered bots on a small fixed set of worker threads
+ * instead of a private thread with its own sleep loop per bot
+ */
+@Service
+@DependsOn("simThreadService")
+public class SimSchedulerService
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimSchedulerService.class);
+
+    /**
+     * Timer wheel of every worker: 1 ms slots, 512 ms per rotation
+     */
+    private static final long TIMER_RESOLUTION = 1L;
+    private static final int TIMER_WHEEL_SIZE = 512;
+
+    /**
+     * Tick period of the simulation in ms
+     */
+    @Value("${sim.scheduler.tick:100}")
+    private long tickPeriod;
+
+    /**
+     * Number of tick worker threads (0 = number of available cores)
+     */
+    @Value("${sim.scheduler.threads:0}")
+    private int workerCount;
+
+    /**
+     * Simulation clock mode: wall, scaled or stepped
+     */
+    @Value("${sim.clock.mode:wall}")
+    private String clockMode;
+
+    /**
+     * Speed-up factor of the scaled clock
+     */
+    @Value("${sim.clock.scale:10}")
+    private double clockScale;
+
+    private SimClock clock;
+
+    /**
+     * Keeps the workers in lock step when the clock is stepped, advances the clock after every tick
+     */
+    private Phaser stepPhaser;
+
+    /**
+     * Tick workers, every registered bot belongs to exactly one worker
+     */
+    private TickWorker[] workers;
+
+    /**
+     * Executor for the (blocking) boot and shutdown work of the bots
+     */
+    private ExecutorService lifecycleExecutor;
+
+    /**
+     * Number of ticks that took longer than the tick period
+     */
+    private final AtomicLong overrunCount = new AtomicLong();
+
+    @PostConstruct
+    public void init()
+    {
+        if(this.workerCount <= 0)
+            this.workerCount = Runtime.getRuntime().availableProcessors();
+
+        this.lifecycleExecutor = SimThreadService.newExecutor("SimLifecycle");
+        this.clock = SimClock.create(this.clockMode, this.clockScale);
+
+        if(this.clock.isStepped())
+        {
+            this.stepPhaser = new Phaser(this.workerCount) {
+                @Override
+                protected boolean onAdvance(int phase, int registeredParties)
+                {
+                    clock.advance(tickPeriod);
+                    return registeredParties == 0;
+                }
+            };
+        }
+
+        this.workers = new TickWorker[this.workerCount];
+
+        for(int i = 0; i < this.workerCount; i++)
+        {
+            this.workers[i] = new TickWorker();
+
+            Thread workerThread = new Thread(this.workers[i], "SimTick-" + i);
+            workerThread.setDaemon(true);
+            workerThread.start();
+        }
+
+        logger.info("Simulation scheduler started with " + this.workerCount + " workers, a tick of " + this.tickPeriod + " ms and a " + this.clockMode + " clock.");
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        for(TickWorker worker : this.workers)
+            worker.stop();
+
+        this.lifecycleExecutor.shutdown();
+    }
+
+    /**
+     * Adds a bot to the least loaded tick worker
+     * @param bot Bot to tick until its tick returns false
+     */
+    public void register(SimTickable bot)
+    {
+        TickWorker target = this.workers[0];
+
+        for(TickWorker worker : this.workers)
+        {
+            if(worker.getLoad() < target.getLoad())
+                target = worker;
+        }
+
+        target.add(bot);
+    }
+
+    /**
+     * Runs blocking lifecycle work (booting or stopping a bot) off the tick workers
+     * @param task Lifecycle task
+     */
+    public void launch(Runnable task)
+    {
+        this.lifecycleExecutor.execute(task);
+    }
+
+    /**
+     * @return Clock all simulation timing is derived from
+     */
+    public SimClock getClock()
+    {
+        return this.clock;
+    }
+
+    /**
+     * @return Configured tick period in simulation ms
+     */
+    public long getTickPeriod()
+    {
+        return this.tickPeriod;
+    }
+
+    /**
+     * @return Duration of the slowest last tick over all workers in ms
+     */
+    public double getTickDuration()
+    {
+        long duration = 0L;
+
+        for(TickWorker worker : this.workers)
+            duration = Math.max(duration, worker.getLastTickDuration());
+
+        return duration / 1000000.0;
+    }
+
+    /**
+     * @return Number of ticks that did not finish within the tick period
+     */
+    public long getOverrunCount()
+    {
+        return this.overrunCount.get();
+    }
+
+    public int getWorkerCount()
+    {
+        return this.workerCount;
+    }
+
+    /**
+     * @return Number of bots handled by each worker thread
+     */
+    public int[] getBotsPerWorker()
+    {
+        int[] bots = new int[this.workers.length];
+
+        for(int i = 0; i < this.workers.length; i++)
+            bots[i] = this.workers[i].getLoad();
+
+        return bots;
+    }
+
+    /**
+     * @return Total number of scheduled bots
+     */
+    public int getBotCount()
+    {
+        int bots = 0;
+
+        for(TickWorker worker : this.workers)
+            bots += worker.getLoad();
+
+        return bots;
+    }
+
+    private class TickWorker implements Runnable
+    {
+        /**
+         * Bots added by other threads, picked up at the start of the next tick
+         */
+        private final Queue<SimTickable> pending = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Bots ticked by this worker, only accessed by the worker thread
+         */
+        private final List<SimTickable> bots = new ArrayList<>();
+
+        /**
+         * Timer for the bots of this worker, tasks run on the worker thread between ticks
+         */
+        private final SimTimerWheel timer = new SimTimerWheel(clock.currentTimeMillis(), TIMER_RESOLUTION, TIMER_WHEEL_SIZE);
+
+        private final AtomicInteger load = new AtomicInteger();
+        private volatile long lastTickDuration = 0L;
+        private volatile boolean running = true;
+
+        private void add(SimTickable bot)
+        {
+            this.load.incrementAndGet();
+            this.pending.offer(bot);
+        }
+
+        private void stop()
+        {
+            this.running = false;
+        }
+
+        private int getLoad()
+        {
+            return this.load.get();
+        }
+
+        private long getLastTickDuration()
+        {
+            return this.lastTickDuration;
+        }
+
+        @Override
+        public void run()
+        {
+            long periodNanos = clock.toRealNanos(tickPeriod);
+            long nextTick = System.nanoTime();
+
+            while(this.running)
+            {
+                long tickStart = System.nanoTime();
+
+                //Pick up newly registered bots
+                SimTickable bot;
+                while((bot = this.pending.poll()) != null)
+                {
+                    bot.scheduled(this.timer);
+                    this.bots.add(bot);
+                }
+
+                Iterator<SimTickable> it = this.bots.iterator();
+
+                while(it.hasNext())
+                {
+                    bot = it.next();
+
+                    boolean keep;
+                    try {
+                        keep = bot.tick();
+                    }
+                    catch(Exception e) {
+                        logger.error("Simulation tick failed, bot will be unscheduled!", e);
+                        keep = false;
+                    }
+
+                    if(!keep)
+                    {
+                        it.remove();
+                        this.load.decrementAndGet();
+                        lifecycleExecutor.execute(bot::unscheduled);
+                    }
+                }
+
+                this.lastTickDuration = System.nanoTime() - tickStart;
+
+                if(stepPhaser != null)
+                {
+                    //Stepped clock: no sleeping, next step starts as soon as all workers are done
+                    if(getBotCount() == 0)
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+
+                    stepPhaser.arriveAndAwaitAdvance();
+
+                    //Run timers that expired during the step
+                    this.timer.advance(clock.currentTimeMillis());
+                    continue;
+                }
+
+                //Wait for the next tick, missed ticks are skipped instead of bursting
+                nextTick += periodNanos;
+                long delay = nextTick - System.nanoTime();
+
+                if(delay <= 0)
+                {
+                    overrunCount.incrementAndGet();
+                    nextTick = System.nanoTime();
+                }
+
+                this.awaitTick(nextTick);
+            }
+
+            if(stepPhaser != null)
+                stepPhaser.arriveAndDeregister();
+
+            //Stop remaining bots
+            for(SimTickable remaining : this.bots)
+                remaining.unscheduled();
+        }
+
+        /**
+         * Runs expired timers until the next tick is due
+         * The worker sleeps until the next tick or the next timer, whichever comes first
+         * @param nextTick System.nanoTime() of the next tick
+         */
+        private void awaitTick(long nextTick)
+        {
+            while(this.running)
+            {
+                long currentTime = clock.currentTimeMillis();
+                this.timer.advance(currentTime);
+
+                long delay = nextTick - System.nanoTime();
+
+                if(delay <= 0)
+                    return;
+
+                long nextFireTime = this.timer.nextFireTime();
+
+                if(nextFireTime != Long.MAX_VALUE)
+                    delay = Math.min(delay, Math.max(clock.toRealNanos(nextFireTime - currentTime), 1L));
+
+                LockSupport.parkNanos(delay);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package be.uantwerpen.sc.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads of the simulated vehicles
+ * Uses virtual threads when enabled and supported by the running JVM (JDK 21+), platform threads otherwise
+ * The virtual thread API is resolved reflectively so the project still builds for Java 8
+ */
+@Service
+public class SimThreadService
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimThreadService.class);
+
+    /**
+     * Factory for virtual threads, null when running on platform threads
+     */
+    private static volatile ThreadFactory virtualThreadFactory = null;
+
+    /**
+     * Shared timer for delayed simulation tasks, created on first use
+     */
+    private static ScheduledExecutorService timer = null;
+
+    @Value("${sim.threads.virtual:false}")
+    private void setVirtualThreads(boolean virtualThreads) {
+        virtualThreadFactory = virtualThreads ? createVirtualThreadFactory() : null;
+    }
+
+    /**
+     * @return True if new simulation threads are virtual threads
+     */
+    public static boolean isVirtual()
+    {
+        return virtualThreadFactory != null;
+    }
+
+    /**
+     * Creates an unstarted simulation thread
+     * @param task Task to run
+     * @param name Thread name
+     * @return Virtual or platform thread depending on the configured mode
+     */
+    public static Thread newThread(Runnable task, String name)
+    {
+        Thread thread;
+
+        if(virtualThreadFactory != null)
+            thread = virtualThreadFactory.newThread(task);
+        else
+            thread = new Thread(task);
+
+        thread.setName(name);
+
+        return thread;
+    }
+
+    /**
+     * Creates an executor for short-lived, blocking simulation tasks
+     * @param name Thread name prefix
+     * @return One virtual thread per task, or a cached pool of daemon platform threads
+     */
+    public static ExecutorService newExecutor(String name)
+    {
+        if(virtualThreadFactory != null)
+        {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, virtualThreadFactory);
+            }
+            catch(Exception e) {
+                logger.warn("Could not create virtual thread executor, using platform threads for " + name + ".");
+            }
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a short task after a delay on the shared simulation timer
+     * @param task Task to run, must not block
+     * @param delay Delay of the task
+     * @param unit Unit of the delay
+     * @return Handle to cancel the task
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit)
+    {
+        return getTimer().schedule(task, delay, unit);
+    }
+
+    private static synchronized ScheduledExecutorService getTimer()
+    {
+        if(timer == null)
+        {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "SimTimer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return timer;
+    }
+
+    private static ThreadFactory createVirtualThreadFactory()
+    {
+        try {
+            //Thread.ofVirtual().factory()
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            logger.info("Simulated vehicles will run on virtual threads.");
+            return factory;
+        }
+        catch(Exception e) {
+            logger.warn("Virtual threads are not supported by this JVM (" + System.getProperty("java.version") + "), using platform threads.");
+            return null;
+        }
+    }
+}
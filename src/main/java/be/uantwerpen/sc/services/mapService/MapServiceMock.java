@@ -30,15 +30,16 @@ public class MapServiceMock extends MapService {
 
         Point point = new Point();
         point.setTile(tile);
-        point.setId(1L);
+        point.setId(10L);
 
+        //Line back to the point itself, so cars can follow it without the location getting lost
         Link link = new Link();
         link.getCost().setLength(10);
         link.setStartPoint(point.getId());
+        link.setEndPoint(point.getId());
         List<Link> neighbours = new ArrayList<>();
-        neighbours.add(new Link());
+        neighbours.add(link);
 
-        point.setId(10L);
         point.setNeighbours(neighbours);
 
         List<Point> nodeList = new ArrayList<>();
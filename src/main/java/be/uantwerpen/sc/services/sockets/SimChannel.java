@@ -0,0 +1,255 @@
+package be.uantwerpen.sc.services.sockets;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.function.BiConsumer;
+
+/**
+ * Non-blocking connection to a vehicle core, read by the socket selector
+ * Received lines stay in the codec until the owning car takes them on its own tick, so reading never blocks a tick
+ */
+public class SimChannel implements SimConnection, SimSelectorService.SelectorHandler
+{
+    private final SocketChannel channel;
+    private final SimSelectorService.SelectorLoop loop;
+
+    /**
+     * Codec of the connection, guarded by this
+     * The selector thread reads into it, the car takes the lines
+     */
+    private final SimLineCodec codec = new SimLineCodec();
+
+    /**
+     * Last line taken by the car, copied because the selector thread moves the bytes of the codec, guarded by this
+     */
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Selector thread only: receives the first line instead of the car, see SimMultiplexListener
+     */
+    private BiConsumer<SimChannel, String> handshake;
+
+    private SelectionKey key;
+    private volatile boolean closed;
+
+    /**
+     * Selector writes the rest of the output, guarded by this
+     */
+    private boolean writeRegistered;
+
+    /**
+     * Codec is full, the selector stops reading until the car takes lines, guarded by this
+     */
+    private boolean readPaused;
+
+    SimChannel(SocketChannel channel, SimSelectorService.SelectorLoop loop)
+    {
+        this.channel = channel;
+        this.loop = loop;
+        this.handshake = null;
+        this.key = null;
+        this.closed = false;
+        this.writeRegistered = false;
+        this.readPaused = false;
+    }
+
+    void setHandshake(BiConsumer<SimChannel, String> handshake)
+    {
+        this.handshake = handshake;
+    }
+
+    /**
+     * Registers the channel for reading, must be called on the selector thread
+     */
+    void register() throws IOException
+    {
+        this.key = this.channel.register(this.loop.getSelector(), SelectionKey.OP_READ, this);
+    }
+
+    public int getPort()
+    {
+        return this.channel.socket().getLocalPort();
+    }
+
+    public int getRemotePort()
+    {
+        return this.channel.socket().getPort();
+    }
+
+    @Override
+    public synchronized String getMessage()
+    {
+        CharSequence next = this.takeLine();
+
+        return next != null ? next.toString() : null;
+    }
+
+    @Override
+    public synchronized CharSequence getLine()
+    {
+        CharSequence next = this.takeLine();
+
+        if(next == null)
+            return null;
+
+        this.line.setLength(0);
+        this.line.append(next);
+
+        return this.line;
+    }
+
+    @Override
+    public boolean sendMessage(String message)
+    {
+        return this.sendMessage(message, SimLineCodec.Ending.NONE);
+    }
+
+    @Override
+    public synchronized boolean sendMessage(CharSequence message, SimLineCodec.Ending ending)
+    {
+        if(this.closed)
+            return false;
+
+        try {
+            if(!this.codec.write(this.channel, message, ending))
+                this.awaitWritable();
+        }
+        catch(IOException e) {
+            System.err.println("Could not write to output stream!");
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public synchronized void appendMessage(CharSequence message, SimLineCodec.Ending ending)
+    {
+        this.codec.append(message, ending);
+    }
+
+    @Override
+    public synchronized boolean flushMessages()
+    {
+        if(this.closed)
+            return false;
+
+        try {
+            if(!this.codec.flush(this.channel))
+                this.awaitWritable();
+        }
+        catch(IOException e) {
+            System.err.println("Could not write to output stream!");
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isClosed()
+    {
+        return this.closed && !this.codec.hasLine();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.closed = true;
+        this.channel.close();
+    }
+
+    @Override
+    public void handle(SelectionKey key) throws IOException
+    {
+        if(key.isReadable())
+            this.read();
+
+        if(key.isValid() && key.isWritable())
+            this.write();
+    }
+
+    private void read() throws IOException
+    {
+        int count;
+        String handshakeLine = null;
+
+        synchronized(this)
+        {
+            while((count = this.codec.read(this.channel)) > 0);
+
+            if(this.handshake != null)
+                handshakeLine = this.codec.nextLineString();
+
+            if(this.codec.isFull())
+            {
+                //Car does not keep up, stop reading so the socket buffer pushes back on the core
+                this.readPaused = true;
+                this.updateInterestOps();
+            }
+        }
+
+        if(handshakeLine != null)
+        {
+            BiConsumer<SimChannel, String> handshake = this.handshake;
+            this.handshake = null;
+            handshake.accept(this, handshakeLine);
+        }
+
+        if(count < 0)
+        {
+            //Connection is closed by the core
+            this.key.cancel();
+            this.close();
+        }
+    }
+
+    /**
+     * Takes the next line from the codec, must be called while holding this
+     * @return View on the codec buffer, valid until the selector reads again
+     */
+    private CharSequence takeLine()
+    {
+        CharSequence next = this.codec.nextLine();
+
+        if(this.readPaused && !this.codec.isFull())
+        {
+            //Lines are taken, the selector can read again
+            this.readPaused = false;
+            this.loop.execute(this::updateInterestOps);
+        }
+
+        return next;
+    }
+
+    private synchronized void write() throws IOException
+    {
+        if(this.codec.flush(this.channel))
+        {
+            this.writeRegistered = false;
+            this.updateInterestOps();
+        }
+    }
+
+    /**
+     * Socket buffer is full, lets the selector write the rest
+     */
+    private void awaitWritable()
+    {
+        if(this.writeRegistered)
+            return;
+
+        this.writeRegistered = true;
+        this.loop.execute(this::updateInterestOps);
+    }
+
+    /**
+     * Sets the interest of the selector from the read and write state, must be called on the selector thread
+     */
+    private synchronized void updateInterestOps()
+    {
+        if(this.key != null && this.key.isValid())
+            this.key.interestOps((this.readPaused ? 0 : SelectionKey.OP_READ) | (this.writeRegistered ? SelectionKey.OP_WRITE : 0));
+    }
+}
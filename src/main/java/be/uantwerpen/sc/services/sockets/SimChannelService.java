@@ -0,0 +1,147 @@
+package be.uantwerpen.sc.services.sockets;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection service on the shared socket selector
+ * Accepts connections without a thread of its own, see SimSelectorService
+ */
+public class SimChannelService implements SimConnectionService, SimSelectorService.SelectorHandler
+{
+    private final SimSelectorService.SelectorLoop loop;
+    private volatile int socketPort;
+    private volatile ServerSocketChannel serverChannel;
+
+    /**
+     * Accepted connections not yet taken by the car
+     */
+    private final Queue<SimChannel> connections = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Released once the server channel is listening (or failed to open)
+     */
+    private volatile CountDownLatch listening;
+
+    SimChannelService(SimSelectorService.SelectorLoop loop)
+    {
+        this.loop = loop;
+        this.socketPort = 0;
+        this.serverChannel = null;
+        this.listening = new CountDownLatch(1);
+    }
+
+    @Override
+    public void start(String name)
+    {
+        CountDownLatch listening = new CountDownLatch(1);
+        this.listening = listening;
+
+        this.loop.execute(() -> {
+            try {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                channel.configureBlocking(false);
+                channel.bind(new InetSocketAddress(this.socketPort));
+                channel.register(this.loop.getSelector(), SelectionKey.OP_ACCEPT, this);
+
+                this.serverChannel = channel;
+            }
+            catch(IOException e) {
+                System.err.println("Could not open port: " + this.socketPort + " for simulator " + name + "!");
+            }
+
+            listening.countDown();
+        });
+    }
+
+    @Override
+    public int awaitListening(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        if(!this.listening.await(timeout, unit))
+            return 0;
+
+        return this.getListeningPort();
+    }
+
+    @Override
+    public boolean stop(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        CountDownLatch stopped = new CountDownLatch(1);
+
+        this.loop.execute(() -> {
+            try {
+                this.close();
+            }
+            catch(IOException e) {
+                System.err.println("Could not close server on port: " + this.getListeningPort() + "!");
+            }
+
+            stopped.countDown();
+        });
+
+        return stopped.await(timeout, unit);
+    }
+
+    @Override
+    public int getListeningPort()
+    {
+        ServerSocketChannel channel = this.serverChannel;
+
+        if(channel != null)
+            return channel.socket().getLocalPort();
+        else
+            return this.socketPort;
+    }
+
+    @Override
+    public SimConnection getConnection()
+    {
+        return this.connections.poll();
+    }
+
+    @Override
+    public void handle(SelectionKey key) throws IOException
+    {
+        SocketChannel socket;
+
+        while((socket = this.serverChannel.accept()) != null)
+        {
+            socket.configureBlocking(false);
+            socket.socket().setTcpNoDelay(true);
+
+            SimChannel connection = new SimChannel(socket, this.loop);
+            connection.register();
+
+            this.connections.offer(connection);
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        //Close remaining waiting connections
+        SimChannel connection;
+        while((connection = this.connections.poll()) != null)
+        {
+            try {
+                connection.close();
+            }
+            catch(IOException e) {
+                System.err.println("Could not close waiting connection!");
+            }
+        }
+
+        ServerSocketChannel channel = this.serverChannel;
+        this.serverChannel = null;
+
+        if(channel != null)
+            channel.close();
+    }
+}
@@ -0,0 +1,53 @@
+package be.uantwerpen.sc.services.sockets;
+
+import java.io.IOException;
+
+/**
+ * Line based connection between a simulated vehicle and its core
+ */
+public interface SimConnection
+{
+    /**
+     * @return Next received line without line ending, null if no line is available
+     */
+    String getMessage();
+
+    /**
+     * Like getMessage without creating a string, for the message loop of the car
+     * @return Next received line without line ending, valid until the next call on the connection, null if no line is available
+     */
+    CharSequence getLine();
+
+    /**
+     * @param message Message to send, line endings are part of the message
+     * @return Success
+     */
+    boolean sendMessage(String message);
+
+    /**
+     * @param message Message to send
+     * @param ending Line ending after the message
+     * @return Success
+     */
+    boolean sendMessage(CharSequence message, SimLineCodec.Ending ending);
+
+    /**
+     * Adds the message to the output without sending it, see flushMessages
+     * @param message Message to send
+     * @param ending Line ending after the message
+     */
+    void appendMessage(CharSequence message, SimLineCodec.Ending ending);
+
+    /**
+     * Sends all appended messages in one write
+     * @return Success
+     */
+    boolean flushMessages();
+
+    /**
+     * @return True if the connection is closed and all received lines are read
+     */
+    boolean isClosed();
+
+    void close() throws IOException;
+}
@@ -0,0 +1,62 @@
+package be.uantwerpen.sc.services.sockets;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accepts the connections of one core channel (tasks or events) of a simulated vehicle
+ */
+public interface SimConnectionService
+{
+    /**
+     * Sets the robot id the core presents in its handshake, only used on shared listening ports
+     * @param robotId Robot id of the car
+     */
+    default void setRobotId(String robotId)
+    {
+    }
+
+    /**
+     * @return True if the listening port is shared by several cars and cores have to send the handshake
+     */
+    default boolean isShared()
+    {
+        return false;
+    }
+
+    /**
+     * @return True if cores connect in-process through the connector of SimPipeService instead of a TCP port
+     */
+    default boolean isInMemory()
+    {
+        return false;
+    }
+
+    /**
+     * Starts listening for connections
+     * @param name Name of the service, used for threads and logging
+     */
+    void start(String name);
+
+    /**
+     * Waits until the service is listening
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return Listening port, 0 if the service could not be started in time
+     */
+    int awaitListening(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Stops listening and closes all waiting connections
+     * @param timeout Maximum time to wait for the service to stop
+     * @param unit Unit of the timeout
+     * @return True if the service is stopped
+     */
+    boolean stop(long timeout, TimeUnit unit) throws InterruptedException;
+
+    int getListeningPort();
+
+    /**
+     * @return Next accepted connection, null if no connection is waiting
+     */
+    SimConnection getConnection();
+}
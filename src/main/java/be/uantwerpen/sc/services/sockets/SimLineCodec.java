@@ -0,0 +1,456 @@
+package be.uantwerpen.sc.services.sockets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ASCII line codec for the core protocol on reusable direct buffers
+ * Received lines are returned as views on the read buffer and messages are encoded straight into the write buffer,
+ * so reading and writing a message does not allocate
+ * Not thread-safe, every connection owns its own codec
+ */
+public class SimLineCodec
+{
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Longest line a connection may receive, a core sending longer lines is disconnected
+     */
+    private static final int DEFAULT_MAX_CAPACITY = 64 * 1024;
+
+    /**
+     * Bytes received and sent by all codecs
+     */
+    private static final LongAdder bytesRead = new LongAdder();
+    private static final LongAdder bytesWritten = new LongAdder();
+
+    /**
+     * Line endings of the core protocol, written from pre-encoded buffers
+     */
+    public enum Ending
+    {
+        NONE(""),
+        LINE("\r\n"),
+        PROMPT("\r\n# ");
+
+        private final String text;
+        private final ByteBuffer encoded;
+
+        Ending(String text)
+        {
+            this.text = text;
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(text.length(), 1));
+            for(int i = 0; i < text.length(); i++)
+                buffer.put((byte) text.charAt(i));
+
+            buffer.flip();
+            this.encoded = buffer.asReadOnlyBuffer();
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.text;
+        }
+    }
+
+    /**
+     * Received bytes, [start, end) is not yet consumed and [start, scan) holds no line feed
+     */
+    private ByteBuffer input;
+    private final int maxCapacity;
+    private int start;
+    private int end;
+    private int scan;
+
+    /**
+     * Encoded message of the current write
+     */
+    private ByteBuffer output;
+
+    /**
+     * Own copies of the line endings, the buffers of the enum are shared
+     */
+    private final ByteBuffer[] endings;
+
+    /**
+     * Reused array for gathering writes: message and line ending
+     */
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+
+    /**
+     * Bytes a non-blocking channel did not take yet, null while empty
+     */
+    private ByteBuffer overflow;
+
+    private final Line line = new Line();
+
+    public SimLineCodec()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SimLineCodec(int capacity)
+    {
+        this(capacity, Math.max(capacity, DEFAULT_MAX_CAPACITY));
+    }
+
+    /**
+     * @param capacity Initial size of the buffers
+     * @param maxCapacity Maximum size of the read buffer, the longest line that can be received
+     */
+    public SimLineCodec(int capacity, int maxCapacity)
+    {
+        this.input = ByteBuffer.allocateDirect(capacity);
+        this.maxCapacity = maxCapacity;
+        this.output = ByteBuffer.allocateDirect(capacity);
+        this.start = 0;
+        this.end = 0;
+        this.scan = 0;
+        this.overflow = null;
+
+        this.endings = new ByteBuffer[Ending.values().length];
+        for(Ending ending : Ending.values())
+            this.endings[ending.ordinal()] = ending.encoded.duplicate();
+    }
+
+    /**
+     * Reads available bytes from the channel, previously returned lines become invalid
+     * Nothing is read while the buffer is full of lines that are not taken yet, see isFull
+     * @param channel Channel to read from
+     * @return Number of bytes read, -1 at the end of the stream
+     * @throws IOException Read failed or the received line is longer than the maximum capacity
+     */
+    public int read(ReadableByteChannel channel) throws IOException
+    {
+        if(this.end == this.input.capacity() && !this.makeRoom())
+        {
+            if(this.findLineFeed())
+                return 0;
+
+            throw new IOException("Received line is longer than " + this.maxCapacity + " bytes");
+        }
+
+        this.input.limit(this.input.capacity()).position(this.end);
+        int count = channel.read(this.input);
+
+        if(count > 0)
+        {
+            this.end += count;
+            bytesRead.add(count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Takes the next complete line from the received bytes
+     * @return Line without CR/LF, valid until the next read, or null if no complete line is received
+     */
+    public CharSequence nextLine()
+    {
+        if(!this.findLineFeed())
+            return null;
+
+        int lineEnd = this.scan;
+
+        if(lineEnd > this.start && this.input.get(lineEnd - 1) == '\r')
+            lineEnd--;
+
+        this.line.set(this.start, lineEnd);
+        this.start = this.scan + 1;
+        this.scan = this.start;
+
+        return this.line;
+    }
+
+    /**
+     * @return Next complete line as string, or null if no complete line is received
+     */
+    public String nextLineString()
+    {
+        CharSequence next = this.nextLine();
+
+        return next != null ? next.toString() : null;
+    }
+
+    /**
+     * @return True if a complete line is received and not yet returned, an unterminated rest does not count
+     */
+    public boolean hasLine()
+    {
+        return this.findLineFeed();
+    }
+
+    /**
+     * @return True if the read buffer is at its maximum capacity and full, lines must be taken before more can be read
+     */
+    public boolean isFull()
+    {
+        return this.start == 0 && this.end == this.input.capacity() && this.input.capacity() >= this.maxCapacity;
+    }
+
+    /**
+     * Writes the message and its line ending in one gathering write
+     * Bytes a non-blocking channel does not take are kept and written first on the next write or flush
+     * @param channel Channel to write to
+     * @param message ASCII message, other characters are sent as '?'
+     * @param ending Line ending after the message
+     * @return True if everything is written
+     */
+    public boolean write(WritableByteChannel channel, CharSequence message, Ending ending) throws IOException
+    {
+        if(this.overflow != null || this.output.position() > 0)
+        {
+            //Keep message order behind the bytes that are still waiting
+            this.append(message, ending);
+            return this.flush(channel);
+        }
+
+        this.encode(message);
+        this.output.flip();
+
+        ByteBuffer endingBuffer = this.endings[ending.ordinal()];
+        endingBuffer.rewind();
+
+        this.gather[0] = this.output;
+        this.gather[1] = endingBuffer;
+
+        long written;
+
+        if(channel instanceof GatheringByteChannel)
+        {
+            written = ((GatheringByteChannel) channel).write(this.gather);
+        }
+        else
+        {
+            written = channel.write(this.output);
+            if(!this.output.hasRemaining())
+                written += channel.write(endingBuffer);
+        }
+
+        bytesWritten.add(written);
+
+        this.keep(this.output);
+        this.keep(endingBuffer);
+        this.output.clear();
+
+        return this.overflow == null;
+    }
+
+    /**
+     * Adds the message to the write buffer, it is sent together with the other messages on the next flush
+     * @param message ASCII message, other characters are sent as '?'
+     * @param ending Line ending after the message
+     */
+    public void append(CharSequence message, Ending ending)
+    {
+        ByteBuffer endingBuffer = this.endings[ending.ordinal()];
+        endingBuffer.rewind();
+
+        this.encode(message);
+        this.ensureOutput(endingBuffer.remaining());
+        this.output.put(endingBuffer);
+    }
+
+    /**
+     * Writes the appended messages and the bytes kept from earlier writes
+     * @param channel Channel to write to
+     * @return True if no bytes are waiting anymore
+     */
+    public boolean flush(WritableByteChannel channel) throws IOException
+    {
+        if(this.overflow != null)
+        {
+            this.overflow.flip();
+            bytesWritten.add(channel.write(this.overflow));
+
+            if(this.overflow.hasRemaining())
+            {
+                this.overflow.compact();
+                return false; //Appended messages wait in the write buffer
+            }
+
+            this.overflow = null;
+        }
+
+        if(this.output.position() > 0)
+        {
+            this.output.flip();
+            bytesWritten.add(channel.write(this.output));
+
+            this.keep(this.output);
+            this.output.clear();
+        }
+
+        return this.overflow == null;
+    }
+
+    /**
+     * @return True if bytes of earlier writes are waiting to be written
+     */
+    public boolean hasPending()
+    {
+        return this.overflow != null || this.output.position() > 0;
+    }
+
+    /**
+     * @return Number of bytes received by all codecs
+     */
+    public static long getBytesRead()
+    {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return Number of bytes sent by all codecs
+     */
+    public static long getBytesWritten()
+    {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Encodes the message behind the bytes already in the write buffer
+     */
+    private void encode(CharSequence message)
+    {
+        int length = message.length();
+        this.ensureOutput(length);
+
+        for(int i = 0; i < length; i++)
+        {
+            char c = message.charAt(i);
+            this.output.put(c < 0x80 ? (byte) c : (byte) '?');
+        }
+    }
+
+    /**
+     * Grows the write buffer if it has no room for the given number of bytes
+     */
+    private void ensureOutput(int length)
+    {
+        if(this.output.remaining() >= length)
+            return;
+
+        ByteBuffer larger = ByteBuffer.allocateDirect(Integer.highestOneBit(this.output.position() + length) << 1);
+        this.output.flip();
+        larger.put(this.output);
+        this.output = larger;
+    }
+
+    /**
+     * Keeps unwritten bytes in the overflow buffer
+     */
+    private void keep(ByteBuffer data)
+    {
+        if(!data.hasRemaining())
+            return;
+
+        if(this.overflow == null)
+            this.overflow = ByteBuffer.allocate(Math.max(DEFAULT_CAPACITY, data.remaining()));
+        else if(this.overflow.remaining() < data.remaining())
+        {
+            ByteBuffer larger = ByteBuffer.allocate((this.overflow.position() + data.remaining()) * 2);
+            this.overflow.flip();
+            larger.put(this.overflow);
+            this.overflow = larger;
+        }
+
+        this.overflow.put(data);
+    }
+
+    /**
+     * Moves scan to the next line feed
+     * @return True if a line feed is received, false if scan reached the end
+     */
+    private boolean findLineFeed()
+    {
+        for(; this.scan < this.end; this.scan++)
+        {
+            if(this.input.get(this.scan) == '\n')
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves the unconsumed bytes to the front, grows the buffer up to its maximum capacity if a single line fills it
+     * @return False if there is no room to make
+     */
+    private boolean makeRoom()
+    {
+        if(this.start == 0 && this.input.capacity() >= this.maxCapacity)
+            return false;
+
+        this.input.limit(this.end).position(this.start);
+
+        if(this.start > 0)
+            this.input.compact();
+        else
+        {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.min(this.input.capacity() * 2, this.maxCapacity));
+            larger.put(this.input);
+            this.input = larger;
+        }
+
+        this.end -= this.start;
+        this.scan -= this.start;
+        this.start = 0;
+
+        return true;
+    }
+
+    /**
+     * Received line as view on the read buffer
+     */
+    private class Line implements CharSequence
+    {
+        private int offset;
+        private int length;
+
+        private void set(int from, int to)
+        {
+            this.offset = from;
+            this.length = to - from;
+        }
+
+        @Override
+        public int length()
+        {
+            return this.length;
+        }
+
+        @Override
+        public char charAt(int index)
+        {
+            if(index < 0 || index >= this.length)
+                throw new IndexOutOfBoundsException("Index: " + index + ", length: " + this.length);
+
+            return (char) (input.get(this.offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to)
+        {
+            return this.toString().substring(from, to);
+        }
+
+        @Override
+        public String toString()
+        {
+            char[] chars = new char[this.length];
+
+            for(int i = 0; i < this.length; i++)
+                chars[i] = (char) (input.get(this.offset + i) & 0xFF);
+
+            return new String(chars);
+        }
+    }
+}
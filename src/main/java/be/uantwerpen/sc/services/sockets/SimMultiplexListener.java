@@ -0,0 +1,108 @@
+package be.uantwerpen.sc.services.sockets;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Listening port shared by all cars for one core channel (tasks or events)
+ * A core identifies its car with a handshake line "ROBOT <robot.id>" directly after connecting
+ */
+class SimMultiplexListener implements SimSelectorService.SelectorHandler
+{
+    private static final String HANDSHAKE = "ROBOT ";
+
+    private final SimSelectorService.SelectorLoop loop;
+    private final ServerSocketChannel serverChannel;
+
+    /**
+     * Services of the running cars by robot id
+     */
+    private final ConcurrentMap<String, SimMultiplexService> services = new ConcurrentHashMap<>();
+
+    SimMultiplexListener(SimSelectorService.SelectorLoop loop, int port) throws IOException
+    {
+        this.loop = loop;
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.bind(new InetSocketAddress(port));
+
+        loop.execute(() -> {
+            try {
+                this.serverChannel.register(this.loop.getSelector(), SelectionKey.OP_ACCEPT, this);
+            }
+            catch(IOException e) {
+                System.err.println("Could not register shared port: " + port + " for simulator!");
+            }
+        });
+    }
+
+    int getListeningPort()
+    {
+        return this.serverChannel.socket().getLocalPort();
+    }
+
+    void addService(String robotId, SimMultiplexService service)
+    {
+        this.services.put(robotId, service);
+    }
+
+    void removeService(String robotId, SimMultiplexService service)
+    {
+        this.services.remove(robotId, service);
+    }
+
+    @Override
+    public void handle(SelectionKey key) throws IOException
+    {
+        SocketChannel socket;
+
+        while((socket = this.serverChannel.accept()) != null)
+        {
+            socket.configureBlocking(false);
+            socket.socket().setTcpNoDelay(true);
+
+            SimChannel connection = new SimChannel(socket, this.loop);
+            connection.setHandshake(this::handshake);
+            connection.register();
+        }
+    }
+
+    /**
+     * Routes a new connection to the car named in its handshake
+     * @param connection New connection
+     * @param line First line received on the connection
+     */
+    private void handshake(SimChannel connection, String line)
+    {
+        SimMultiplexService service = null;
+
+        if(line.startsWith(HANDSHAKE))
+            service = this.services.get(line.substring(HANDSHAKE.length()).trim());
+
+        if(service != null)
+        {
+            service.addConnection(connection);
+            return;
+        }
+
+        System.err.println("Unknown handshake on shared port " + this.getListeningPort() + ": " + line);
+
+        try {
+            connection.close();
+        }
+        catch(IOException e) {
+            System.err.println("Could not close rejected connection!");
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.serverChannel.close();
+    }
+}
@@ -0,0 +1,99 @@
+package be.uantwerpen.sc.services.sockets;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection service of one car on a shared listening port, see SimMultiplexListener
+ */
+public class SimMultiplexService implements SimConnectionService
+{
+    private final SimMultiplexListener listener;
+    private String robotId;
+    private volatile boolean started;
+
+    /**
+     * Connections routed to this car, not yet taken by the car
+     */
+    private final Queue<SimChannel> connections = new ConcurrentLinkedQueue<>();
+
+    SimMultiplexService(SimMultiplexListener listener)
+    {
+        this.listener = listener;
+        this.robotId = null;
+        this.started = false;
+    }
+
+    @Override
+    public void setRobotId(String robotId)
+    {
+        this.robotId = robotId;
+    }
+
+    @Override
+    public boolean isShared()
+    {
+        return true;
+    }
+
+    @Override
+    public void start(String name)
+    {
+        if(this.robotId == null)
+        {
+            System.err.println("No robot id for shared port service " + name + "!");
+            return;
+        }
+
+        this.listener.addService(this.robotId, this);
+        this.started = true;
+    }
+
+    @Override
+    public int awaitListening(long timeout, TimeUnit unit)
+    {
+        return this.started ? this.listener.getListeningPort() : 0;
+    }
+
+    @Override
+    public boolean stop(long timeout, TimeUnit unit)
+    {
+        if(this.started)
+            this.listener.removeService(this.robotId, this);
+
+        this.started = false;
+
+        //Close remaining waiting connections
+        SimChannel connection;
+        while((connection = this.connections.poll()) != null)
+        {
+            try {
+                connection.close();
+            }
+            catch(IOException e) {
+                System.err.println("Could not close waiting connection!");
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int getListeningPort()
+    {
+        return this.listener.getListeningPort();
+    }
+
+    @Override
+    public SimConnection getConnection()
+    {
+        return this.connections.poll();
+    }
+
+    void addConnection(SimChannel connection)
+    {
+        this.connections.offer(connection);
+    }
+}
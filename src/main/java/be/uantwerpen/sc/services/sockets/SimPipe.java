@@ -0,0 +1,125 @@
+package be.uantwerpen.sc.services.sockets;
+
+import java.io.IOException;
+import java.nio.channels.Pipe;
+
+/**
+ * Car side of an in-memory core connection, see SimPipeService
+ * Reads are non-blocking like the selector transport, writes block until the core has room in the pipe
+ */
+public class SimPipe implements SimConnection
+{
+    private final Pipe.SourceChannel reader;
+    private final Pipe.SinkChannel writer;
+    private final SimLineCodec codec;
+
+    SimPipe(Pipe.SourceChannel reader, Pipe.SinkChannel writer) throws IOException
+    {
+        this.reader = reader;
+        this.writer = writer;
+        this.codec = new SimLineCodec();
+
+        this.reader.configureBlocking(false);
+    }
+
+    @Override
+    public String getMessage()
+    {
+        CharSequence line = this.getLine();
+
+        return line != null ? line.toString() : null;
+    }
+
+    @Override
+    public CharSequence getLine()
+    {
+        //Lines of an earlier read come first
+        CharSequence line = this.codec.nextLine();
+
+        if(line != null || !this.reader.isOpen())
+            return line;
+
+        try {
+            if(this.codec.read(this.reader) < 0)
+            {
+                this.close(); //Pipe is closed by the core
+                return null;
+            }
+        }
+        catch(IOException e) {
+            System.err.println("Could not read core pipe!");
+
+            if(this.codec.isFull())
+                this.closeQuietly(); //Line longer than the read buffer
+        }
+
+        return this.codec.nextLine();
+    }
+
+    @Override
+    public boolean sendMessage(String message)
+    {
+        return this.sendMessage(message, SimLineCodec.Ending.NONE);
+    }
+
+    @Override
+    public boolean sendMessage(CharSequence message, SimLineCodec.Ending ending)
+    {
+        if(!this.writer.isOpen())
+            return false;
+
+        try {
+            this.codec.write(this.writer, message, ending);
+        }
+        catch(IOException e) {
+            System.err.println("Could not write to core pipe!");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void appendMessage(CharSequence message, SimLineCodec.Ending ending)
+    {
+        this.codec.append(message, ending);
+    }
+
+    @Override
+    public boolean flushMessages()
+    {
+        if(!this.writer.isOpen())
+            return false;
+
+        try {
+            this.codec.flush(this.writer);
+        }
+        catch(IOException e) {
+            System.err.println("Could not write to core pipe!");
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return !this.reader.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.reader.close();
+        this.writer.close();
+    }
+
+    private void closeQuietly()
+    {
+        try {
+            this.close();
+        }
+        catch(IOException e) {
+            //Already closed
+        }
+    }
+}
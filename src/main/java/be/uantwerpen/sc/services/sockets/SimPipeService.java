@@ -0,0 +1,125 @@
+package be.uantwerpen.sc.services.sockets;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.channels.Pipe;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory connection service for cores running inside the simulator
+ * The service listens on a virtual port, cores connect with connect(port) and get a socket backed by pipes,
+ * no TCP port or loopback traffic is involved
+ */
+public class SimPipeService implements SimConnectionService
+{
+    /**
+     * Virtual ports are never reused, 0 stays reserved for "not listening"
+     */
+    private static final AtomicInteger nextPort = new AtomicInteger(1);
+    private static final Map<Integer, SimPipeService> services = new ConcurrentHashMap<>();
+
+    private volatile int port;
+
+    /**
+     * Connections of the core, not yet taken by the car
+     */
+    private final Queue<SimPipe> connections = new ConcurrentLinkedQueue<>();
+
+    public SimPipeService()
+    {
+        this.port = 0;
+    }
+
+    /**
+     * Opens an in-memory connection to the service listening on the virtual port
+     * Passed to in-process cores as connector, see HostedSimCore
+     * @param port Virtual port of the car
+     * @return Core side of the connection, null if no service listens on the port
+     */
+    public static Socket connect(int port)
+    {
+        SimPipeService service = services.get(port);
+
+        if(service == null)
+            return null;
+
+        try {
+            return service.accept();
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean isInMemory()
+    {
+        return true;
+    }
+
+    @Override
+    public void start(String name)
+    {
+        int port = nextPort.getAndIncrement();
+
+        services.put(port, this);
+        this.port = port;
+    }
+
+    @Override
+    public int awaitListening(long timeout, TimeUnit unit)
+    {
+        return this.port;
+    }
+
+    @Override
+    public boolean stop(long timeout, TimeUnit unit)
+    {
+        if(this.port != 0)
+            services.remove(this.port, this);
+
+        this.port = 0;
+
+        //Close remaining waiting connections
+        SimPipe connection;
+        while((connection = this.connections.poll()) != null)
+        {
+            try {
+                connection.close();
+            }
+            catch(IOException e) {
+                System.err.println("Could not close waiting connection!");
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int getListeningPort()
+    {
+        return this.port;
+    }
+
+    @Override
+    public SimConnection getConnection()
+    {
+        return this.connections.poll();
+    }
+
+    private Socket accept() throws IOException
+    {
+        Pipe toCore = Pipe.open();
+        Pipe toCar = Pipe.open();
+
+        this.connections.offer(new SimPipe(toCar.source(), toCore.sink()));
+
+        return new SimPipeSocket(toCore.source(), toCar.sink(), this.port);
+    }
+}
@@ -0,0 +1,154 @@
+package be.uantwerpen.sc.services.sockets;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+
+/**
+ * Core side of an in-memory connection, see SimPipeService
+ * Behaves like a connected blocking socket, socket options are accepted but have no effect
+ */
+public class SimPipeSocket extends Socket
+{
+    private final Pipe.SourceChannel source;
+    private final Pipe.SinkChannel sink;
+    private final int port;
+    private final InputStream input;
+    private final OutputStream output;
+    private int timeout;
+
+    SimPipeSocket(Pipe.SourceChannel source, Pipe.SinkChannel sink, int port)
+    {
+        this.source = source;
+        this.sink = sink;
+        this.port = port;
+        this.input = Channels.newInputStream(source);
+        this.output = Channels.newOutputStream(sink);
+        this.timeout = 0;
+    }
+
+    @Override
+    public void connect(SocketAddress endpoint, int timeout) throws IOException
+    {
+        throw new SocketException("Socket is already connected");
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException
+    {
+        if(this.isClosed())
+            throw new SocketException("Socket is closed");
+
+        return this.input;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException
+    {
+        if(this.isClosed())
+            throw new SocketException("Socket is closed");
+
+        return this.output;
+    }
+
+    @Override
+    public void shutdownInput() throws IOException
+    {
+        this.source.close();
+    }
+
+    @Override
+    public void shutdownOutput() throws IOException
+    {
+        this.sink.close();
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        this.source.close();
+        this.sink.close();
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return !this.source.isOpen() && !this.sink.isOpen();
+    }
+
+    @Override
+    public boolean isConnected()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isBound()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isInputShutdown()
+    {
+        return !this.source.isOpen();
+    }
+
+    @Override
+    public boolean isOutputShutdown()
+    {
+        return !this.sink.isOpen();
+    }
+
+    @Override
+    public InetAddress getInetAddress()
+    {
+        return InetAddress.getLoopbackAddress();
+    }
+
+    @Override
+    public int getPort()
+    {
+        return this.port;
+    }
+
+    @Override
+    public synchronized void setSoTimeout(int timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public synchronized int getSoTimeout()
+    {
+        return this.timeout;
+    }
+
+    @Override
+    public void setTcpNoDelay(boolean on)
+    {
+    }
+
+    @Override
+    public boolean getTcpNoDelay()
+    {
+        return true;
+    }
+
+    @Override
+    public void setKeepAlive(boolean on)
+    {
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SimPipeSocket[port=" + this.port + "]";
+    }
+}
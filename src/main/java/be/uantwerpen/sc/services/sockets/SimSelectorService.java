@@ -0,0 +1,277 @@
+package be.uantwerpen.sc.services.sockets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selector based socket transport
+ * Accepts and reads the task and event connections of all simulated cars on a few selector threads,
+ * instead of an accept thread per socket service and a blocking read per connection every tick
+ */
+@Service
+public class SimSelectorService
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimSelectorService.class);
+
+    /**
+     * Socket transport of the cars: selector or blocking (thread per socket service)
+     */
+    @Value("${sim.sockets.transport:selector}")
+    private String transport;
+
+    /**
+     * Number of selector threads
+     */
+    @Value("${sim.sockets.selector.threads:1}")
+    private int selectorCount;
+
+    /**
+     * All cars share one task port and one event port, cores identify their car with a handshake
+     */
+    @Value("${sim.sockets.multiplex:false}")
+    private boolean multiplex;
+
+    /**
+     * Shared ports in multiplex mode (0 = random free port)
+     */
+    @Value("${sim.sockets.multiplex.taskport:0}")
+    private int multiplexTaskPort;
+
+    @Value("${sim.sockets.multiplex.eventport:0}")
+    private int multiplexEventPort;
+
+    private SelectorLoop[] loops;
+
+    private SimMultiplexListener taskListener;
+    private SimMultiplexListener eventListener;
+
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    @PostConstruct
+    public void init() throws IOException
+    {
+        if(!this.isEnabled())
+        {
+            if(this.multiplex)
+                logger.warn("Shared socket ports need the selector transport, every car will listen on its own ports.");
+
+            return;
+        }
+
+        if(this.selectorCount <= 0)
+            this.selectorCount = 1;
+
+        this.loops = new SelectorLoop[this.selectorCount];
+
+        for(int i = 0; i < this.selectorCount; i++)
+        {
+            this.loops[i] = new SelectorLoop();
+
+            Thread loopThread = new Thread(this.loops[i], "SimSelector-" + i);
+            loopThread.setDaemon(true);
+            loopThread.start();
+        }
+
+        logger.info("Socket selector started with " + this.selectorCount + " threads.");
+
+        if(this.multiplex)
+        {
+            this.taskListener = new SimMultiplexListener(this.nextLoop(), this.multiplexTaskPort);
+            this.eventListener = new SimMultiplexListener(this.nextLoop(), this.multiplexEventPort);
+
+            logger.info("Cars share task port " + this.taskListener.getListeningPort() + " and event port " + this.eventListener.getListeningPort() + ".");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        if(this.loops == null)
+            return;
+
+        for(SelectorLoop loop : this.loops)
+            loop.stop();
+    }
+
+    /**
+     * @return True if the cars use the selector transport
+     */
+    public boolean isEnabled()
+    {
+        return "selector".equalsIgnoreCase(this.transport);
+    }
+
+    /**
+     * @return Connection service for the task channel of a car
+     */
+    public SimConnectionService newTaskConnectionService()
+    {
+        return this.newConnectionService(this.taskListener);
+    }
+
+    /**
+     * @return Connection service for the event channel of a car
+     */
+    public SimConnectionService newEventConnectionService()
+    {
+        return this.newConnectionService(this.eventListener);
+    }
+
+    /**
+     * Creates a connection service for one core channel of a car
+     * @param listener Shared port of the channel, null if every car listens on its own port
+     * @return Selector based service, or a blocking socket service when the selector transport is disabled
+     */
+    private SimConnectionService newConnectionService(SimMultiplexListener listener)
+    {
+        if(!this.isEnabled())
+            return new SimSocketService();
+
+        if(listener != null)
+            return new SimMultiplexService(listener);
+
+        return new SimChannelService(this.nextLoop());
+    }
+
+    /**
+     * @return Selector loop for a new channel, channels are spread round robin
+     */
+    SelectorLoop nextLoop()
+    {
+        return this.loops[Math.floorMod(this.nextLoop.getAndIncrement(), this.loops.length)];
+    }
+
+    /**
+     * Handles the ready operations of a registered channel, always called on the selector thread
+     */
+    interface SelectorHandler
+    {
+        void handle(SelectionKey key) throws IOException;
+
+        /**
+         * Closes the channel after a failure
+         */
+        void close() throws IOException;
+    }
+
+    /**
+     * Selector with its own thread
+     */
+    static class SelectorLoop implements Runnable
+    {
+        private final Selector selector;
+
+        /**
+         * Work from other threads, e.g. registrations and interest changes, run on the selector thread
+         */
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        private volatile boolean running = true;
+
+        private SelectorLoop() throws IOException
+        {
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Runs the task on the selector thread
+         * @param task Task to run
+         */
+        void execute(Runnable task)
+        {
+            this.tasks.offer(task);
+            this.selector.wakeup();
+        }
+
+        Selector getSelector()
+        {
+            return this.selector;
+        }
+
+        private void stop()
+        {
+            this.running = false;
+            this.selector.wakeup();
+        }
+
+        @Override
+        public void run()
+        {
+            while(this.running)
+            {
+                try {
+                    this.selector.select();
+                }
+                catch(IOException e) {
+                    logger.error("Socket selector failed!", e);
+                    break;
+                }
+
+                Runnable task;
+                while((task = this.tasks.poll()) != null)
+                {
+                    try {
+                        task.run();
+                    }
+                    catch(Exception e) {
+                        logger.error("Socket selector task failed!", e);
+                    }
+                }
+
+                Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+
+                while(it.hasNext())
+                {
+                    SelectionKey key = it.next();
+                    it.remove();
+
+                    try {
+                        if(key.isValid())
+                            ((SelectorHandler) key.attachment()).handle(key);
+                    }
+                    catch(Exception e) {
+                        logger.warn("Closing connection after socket error: " + e.getMessage());
+                        key.cancel();
+
+                        try {
+                            ((SelectorHandler) key.attachment()).close();
+                        }
+                        catch(IOException ex) {
+                            //Already closed
+                        }
+                    }
+                }
+            }
+
+            //Close remaining channels
+            for(SelectionKey key : this.selector.keys())
+            {
+                try {
+                    ((SelectorHandler) key.attachment()).close();
+                }
+                catch(IOException e) {
+                    //Already closed
+                }
+            }
+
+            try {
+                this.selector.close();
+            }
+            catch(IOException e) {
+                logger.error("Could not close socket selector!");
+            }
+        }
+    }
+}
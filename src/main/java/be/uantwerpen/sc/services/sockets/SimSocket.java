@@ -1,19 +1,23 @@
 package be.uantwerpen.sc.services.sockets;
 
-import java.io.*;
+import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Created by Thomas on 5/05/2017.
  * Class for managing socket communications to vehicle cores
  */
-public class SimSocket
+public class SimSocket implements SimConnection
 {
     private Socket socket;
-    private BufferedReader reader;
-    private BufferedWriter writer;
+    private ReadableByteChannel reader;
+    private WritableByteChannel writer;
+    private SimLineCodec codec;
 
     private SimSocket()
     {
@@ -23,12 +27,17 @@ public class SimSocket
     public SimSocket(Socket socket)
     {
         this.socket = socket;
+        this.codec = new SimLineCodec();
     }
 
+    @Override
     public void close() throws IOException
     {
-        this.reader.close();
-        this.writer.close();
+        if(this.reader != null)
+            this.reader.close();
+
+        if(this.writer != null)
+            this.writer.close();
 
         this.socket.close();
     }
@@ -51,18 +60,32 @@ public class SimSocket
         return this.socket.getPort();
     }
 
+    @Override
     public boolean isClosed()
     {
         return this.socket.isClosed();
     }
 
+    @Override
     public String getMessage()
     {
-        String message = null;
+        CharSequence line = this.getLine();
+
+        return line != null ? line.toString() : null;
+    }
 
+    @Override
+    public CharSequence getLine()
+    {
         if(this.socket.isClosed())
             return null;
 
+        //Lines of an earlier read come first
+        CharSequence line = this.codec.nextLine();
+
+        if(line != null)
+            return line;
+
         try {
             openReader();
         }
@@ -75,10 +98,11 @@ public class SimSocket
         {
             try
             {
-                message = this.reader.readLine();
-
-                if(message == null)
+                if(this.codec.read(this.reader) < 0)
+                {
                     this.close(); //Socket is closed by the client
+                    return null;
+                }
             }
             catch(SocketTimeoutException e) {
                 //Socket timed-out
@@ -86,15 +110,23 @@ public class SimSocket
         }
         catch(IOException e) {
             System.err.println("Could not read input stream!");
+
+            if(this.codec.isFull())
+                this.closeQuietly(); //Line longer than the read buffer
         }
 
-        return message;
+        return this.codec.nextLine();
     }
 
+    @Override
     public boolean sendMessage(String message)
     {
-        boolean success = true;
+        return this.sendMessage(message, SimLineCodec.Ending.NONE);
+    }
 
+    @Override
+    public boolean sendMessage(CharSequence message, SimLineCodec.Ending ending)
+    {
         if(this.socket.isClosed())
             return false;
 
@@ -107,28 +139,61 @@ public class SimSocket
         }
 
         try {
-            this.writer.write(message);
-            this.writer.flush();
+            //Blocking channel, the codec writes everything at once
+            this.codec.write(this.writer, message, ending);
         }
         catch(IOException e) {
             System.err.println("Could not write to output stream!");
-            success = false;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void appendMessage(CharSequence message, SimLineCodec.Ending ending)
+    {
+        this.codec.append(message, ending);
+    }
+
+    @Override
+    public boolean flushMessages()
+    {
+        if(this.socket.isClosed())
+            return false;
+
+        try {
+            openWriter();
+            this.codec.flush(this.writer);
+        }
+        catch(IOException e) {
+            System.err.println("Could not write to output stream!");
+            return false;
+        }
+        return true;
+    }
+
+    private void closeQuietly()
+    {
+        try {
+            this.close();
+        }
+        catch(IOException e) {
+            //Already closed
         }
-        return success;
     }
 
     private void openReader() throws IOException
     {
+        //Stream based channel, reading honours the socket time-out
         if(this.reader == null && this.socket != null) {
-            reader = new BufferedReader(new InputStreamReader(this.socket.getInputStream()));
+            reader = Channels.newChannel(this.socket.getInputStream());
         }
     }
 
     private void openWriter() throws IOException
     {
         if(this.writer == null && this.socket != null) {
-            writer = new BufferedWriter(new OutputStreamWriter(this.socket.getOutputStream()));
+            writer = this.socket.getChannel() != null ? this.socket.getChannel() : Channels.newChannel(this.socket.getOutputStream());
         }
     }
 }
-
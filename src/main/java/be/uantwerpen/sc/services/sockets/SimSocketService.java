@@ -1,5 +1,6 @@
 package be.uantwerpen.sc.services.sockets;
 
+import be.uantwerpen.sc.services.SimThreadService;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -8,23 +9,37 @@ import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Thomas on 5/05/2017.
  * Threadable class
  */
 @Service
-public class SimSocketService implements Runnable
+public class SimSocketService implements SimConnectionService, Runnable
 {
     private volatile int socketPort;
     private List<SimSocket> sockets;
-    private ServerSocket serverSocket;
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * Thread running the accept loop
+     */
+    private Thread serviceThread;
+
+    /**
+     * Released once the server socket is listening (or failed to open)
+     */
+    private volatile CountDownLatch listening;
 
     public SimSocketService()
     {
         this.socketPort = 0;
         this.sockets = new ArrayList<SimSocket>();
         this.serverSocket = null;
+        this.serviceThread = null;
+        this.listening = new CountDownLatch(1);
     }
 
     public SimSocketService(int listeningPort)
@@ -36,12 +51,60 @@ public class SimSocketService implements Runnable
 
         this.sockets = new ArrayList<>();
         this.serverSocket = null;
+        this.serviceThread = null;
+        this.listening = new CountDownLatch(1);
+    }
+
+    /**
+     * Starts the accept loop on a new simulation thread
+     * @param name Thread name
+     */
+    @Override
+    public void start(String name)
+    {
+        this.listening = new CountDownLatch(1);
+        this.serviceThread = SimThreadService.newThread(this, name);
+        this.serviceThread.start();
+    }
+
+    /**
+     * Waits until the server socket is listening
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return Listening port, 0 if the socket could not be opened in time
+     */
+    @Override
+    public int awaitListening(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        if(!this.listening.await(timeout, unit))
+            return 0;
+
+        return this.serverSocket != null ? this.serverSocket.getLocalPort() : 0;
+    }
+
+    /**
+     * Stops the accept loop and closes all waiting connections
+     * @param timeout Maximum time to wait for the accept loop to end
+     * @param unit Unit of the timeout
+     * @return True if the service is stopped
+     */
+    @Override
+    public boolean stop(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        if(this.serviceThread == null)
+            return true;
+
+        this.serviceThread.interrupt();
+        this.serviceThread.join(unit.toMillis(timeout));
+
+        return !this.serviceThread.isAlive();
     }
 
     /**
      *
      * @return
      */
+    @Override
     public int getListeningPort()
     {
         if(serverSocket != null)
@@ -50,6 +113,7 @@ public class SimSocketService implements Runnable
             return this.socketPort;
     }
 
+    @Override
     synchronized public SimSocket getConnection()
     {
         synchronized(this.sockets)
@@ -79,9 +143,12 @@ public class SimSocketService implements Runnable
         }
         catch(Exception e) {
             System.err.println("Could not open port: " + this.socketPort + " for simulator!");
+            this.listening.countDown();
             return;
         }
 
+        this.listening.countDown();
+
         while(!Thread.currentThread().isInterrupted())
         {
             try {
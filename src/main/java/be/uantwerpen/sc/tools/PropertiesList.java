@@ -1,16 +1,26 @@
 package be.uantwerpen.sc.tools;
 
+import be.uantwerpen.sc.services.SimConfigWatchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
 
+import javax.annotation.PostConstruct;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -21,17 +31,87 @@ public class PropertiesList
 {
     private static String PROPERTIESLIST = "PropertiesList.xml";
 
-    public List<String> getProperties() throws Exception {
+    private static final Logger logger = LoggerFactory.getLogger(PropertiesList.class);
+
+    @Autowired(required = false)
+    private SimConfigWatchService configWatch;
+
+    /**
+     * Parsed properties, replaced as a whole when the file is reloaded
+     */
+    private volatile List<String> properties = null;
+
+    @PostConstruct
+    public void init()
+    {
+        try {
+            this.properties = this.load();
+        }
+        catch(Exception e) {
+            logger.error(e.getMessage());
+        }
+
+        File file = this.getFile();
+
+        //Files inside the application jar do not change
+        if(file != null && this.configWatch != null)
+            this.configWatch.watch(file, this::reload);
+    }
+
+    public List<String> getProperties() throws Exception
+    {
+        List<String> properties = this.properties;
+
+        if(properties == null)
+        {
+            properties = this.load();
+            this.properties = properties;
+        }
+
+        return new ArrayList<String>(properties);
+    }
+
+    /**
+     * Parses the file again, the current properties are kept if it is not valid
+     */
+    private void reload()
+    {
+        try {
+            this.properties = this.load();
+        }
+        catch(Exception e) {
+            logger.error(e.getMessage() + " Keeping the current properties.");
+        }
+    }
+
+    private File getFile()
+    {
+        URL resource = getClass().getClassLoader().getResource(PROPERTIESLIST);
+
+        if(resource == null || !"file".equals(resource.getProtocol()))
+            return null;
+
+        try {
+            return new File(resource.toURI());
+        }
+        catch(URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private List<String> load() throws Exception
+    {
         List<String> properties = new ArrayList<String>();
-        ClassLoader classLoader = getClass().getClassLoader();
+        InputStream input = getClass().getClassLoader().getResourceAsStream(PROPERTIESLIST);
+
+        if(input == null)
+            throw new Exception("Could not load properties list! " + PROPERTIESLIST + " not found.");
 
         try
         {
-            File propertiesFile = new File(classLoader.getResource(PROPERTIESLIST).toURI());
-
             DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
             DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            Document document = documentBuilder.parse(propertiesFile);
+            Document document = documentBuilder.parse(input);
 
             document.getDocumentElement().normalize();
 
@@ -43,15 +123,24 @@ public class PropertiesList
 
                 if(node.getNodeType() == Node.ELEMENT_NODE)
                 {
-                    properties.add(properties.size(), ((Element)node).getElementsByTagName("name").item(0).getTextContent());
+                    NodeList names = ((Element)node).getElementsByTagName("name");
+
+                    if(names.getLength() == 0 || names.item(0).getTextContent().trim().isEmpty())
+                        throw new Exception("Could not load properties list! Entry without name.");
+
+                    properties.add(properties.size(), names.item(0).getTextContent());
                 }
             }
         }
-        catch(IOException e)
+        catch(IOException | SAXException | NullPointerException e)
         {
             throw new Exception("Could not load properties list! " + e.getMessage());
         }
+        finally
+        {
+            input.close();
+        }
 
-        return properties;
+        return Collections.unmodifiableList(properties);
     }
 }
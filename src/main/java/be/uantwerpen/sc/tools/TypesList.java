@@ -1,16 +1,26 @@
 package be.uantwerpen.sc.tools;
 
+import be.uantwerpen.sc.services.SimConfigWatchService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
 
+import javax.annotation.PostConstruct;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -23,18 +33,87 @@ public class TypesList
 {
     private static String TYPESLIST = "TypesList.xml";
 
+    private static final Logger logger = LoggerFactory.getLogger(TypesList.class);
+
+    @Autowired(required = false)
+    private SimConfigWatchService configWatch;
+
+    /**
+     * Parsed types, replaced as a whole when the file is reloaded
+     */
+    private volatile List<String> types = null;
+
+    @PostConstruct
+    public void init()
+    {
+        try {
+            this.types = this.load();
+        }
+        catch(Exception e) {
+            logger.error(e.getMessage());
+        }
+
+        File file = this.getFile();
+
+        //Files inside the application jar do not change
+        if(file != null && this.configWatch != null)
+            this.configWatch.watch(file, this::reload);
+    }
+
     public List<String> getTypes() throws Exception
+    {
+        List<String> types = this.types;
+
+        if(types == null)
+        {
+            types = this.load();
+            this.types = types;
+        }
+
+        return new ArrayList<String>(types);
+    }
+
+    /**
+     * Parses the file again, the current types are kept if it is not valid
+     */
+    private void reload()
+    {
+        try {
+            this.types = this.load();
+        }
+        catch(Exception e) {
+            logger.error(e.getMessage() + " Keeping the current types.");
+        }
+    }
+
+    private File getFile()
+    {
+        URL resource = getClass().getClassLoader().getResource(TYPESLIST);
+
+        if(resource == null || !"file".equals(resource.getProtocol()))
+            return null;
+
+        try {
+            return new File(resource.toURI());
+        }
+        catch(URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private List<String> load() throws Exception
     {
         List<String> types = new ArrayList<String>();
-        ClassLoader classLoader = getClass().getClassLoader();
+        InputStream input = getClass().getClassLoader().getResourceAsStream(TYPESLIST);
+
+        if(input == null)
+            throw new Exception("Could not load types list! " + TYPESLIST + " not found.");
 
         try
         {
-            File typesFile = new File(classLoader.getResource(TYPESLIST).toURI());
-
             DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
             DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            Document document = documentBuilder.parse(typesFile);
+            Document document = documentBuilder.parse(input);
 
             document.getDocumentElement().normalize();
 
@@ -46,16 +125,25 @@ public class TypesList
 
                 if(node.getNodeType() == Node.ELEMENT_NODE)
                 {
-                    types.add(types.size(), ((Element)node).getElementsByTagName("name").item(0).getTextContent());
+                    NodeList names = ((Element)node).getElementsByTagName("name");
+
+                    if(names.getLength() == 0 || names.item(0).getTextContent().trim().isEmpty())
+                        throw new Exception("Could not load types list! Entry without name.");
+
+                    types.add(types.size(), names.item(0).getTextContent());
                 }
             }
         }
-        catch(IOException e)
+        catch(IOException | SAXException | NullPointerException e)
         {
             throw new Exception("Could not load types list! " + e.getMessage());
         }
+        finally
+        {
+            input.close();
+        }
 
-        return types;
+        return Collections.unmodifiableList(types);
     }
 }
 
@@ -0,0 +1,38 @@
+package be.uantwerpen.sc.tools.clock;
+
+/**
+ * Simulation time runs a fixed factor faster (or slower) than real time
+ */
+public class ScaledClock implements SimClock
+{
+    private final double scale;
+    private final long originMillis;
+    private final long originNanos;
+
+    public ScaledClock(double scale)
+    {
+        if(scale <= 0)
+            throw new IllegalArgumentException("Clock scale must be positive: " + scale);
+
+        this.scale = scale;
+        this.originMillis = System.currentTimeMillis();
+        this.originNanos = System.nanoTime();
+    }
+
+    public double getScale()
+    {
+        return this.scale;
+    }
+
+    @Override
+    public long currentTimeMillis()
+    {
+        return this.originMillis + (long)((System.nanoTime() - this.originNanos) * this.scale / 1000000.0);
+    }
+
+    @Override
+    public long toRealNanos(long simulatedMillis)
+    {
+        return (long)(simulatedMillis * 1000000L / this.scale);
+    }
+}
@@ -0,0 +1,58 @@
+package be.uantwerpen.sc.tools.clock;
+
+/**
+ * Source of simulation time
+ * All simulation timing (ticks, driving, events) is derived from this clock instead of the system time,
+ * which allows running the simulation slower or faster than real time
+ */
+public interface SimClock
+{
+    /**
+     * @return Current simulation time in ms
+     */
+    long currentTimeMillis();
+
+    /**
+     * Converts a simulated duration to the real time to wait for it
+     * @param simulatedMillis Simulated duration in ms
+     * @return Real duration in ns, 0 if the clock does not follow real time
+     */
+    long toRealNanos(long simulatedMillis);
+
+    /**
+     * @return True if time only moves by calling advance()
+     */
+    default boolean isStepped()
+    {
+        return false;
+    }
+
+    /**
+     * Moves a stepped clock forward, ignored by clocks that follow real time
+     * @param millis Simulated time step in ms
+     */
+    default void advance(long millis)
+    {
+    }
+
+    /**
+     * Creates a clock for the given mode
+     * @param mode wall, scaled or stepped
+     * @param scale Speed-up factor used by the scaled mode
+     * @return Simulation clock
+     */
+    static SimClock create(String mode, double scale)
+    {
+        switch(mode.toLowerCase().trim())
+        {
+            case "wall":
+                return new WallClock();
+            case "scaled":
+                return new ScaledClock(scale);
+            case "stepped":
+                return new SteppedClock(System.currentTimeMillis());
+            default:
+                throw new IllegalArgumentException("Unknown simulation clock mode: " + mode);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package be.uantwerpen.sc.tools.clock;
+
+/**
+ * Schedules tasks at a given simulation time
+ */
+public interface SimTimer
+{
+    /**
+     * Schedules a task
+     * @param deadline Simulation time in ms at which the task runs
+     * @param task Task to run
+     * @return Handle to cancel the task
+     */
+    Timeout schedule(long deadline, Runnable task);
+
+    interface Timeout
+    {
+        /**
+         * @return Simulation time in ms at which the task runs
+         */
+        long getDeadline();
+
+        /**
+         * Cancels the task
+         * @return False if the task already ran or was cancelled before
+         */
+        boolean cancel();
+    }
+}
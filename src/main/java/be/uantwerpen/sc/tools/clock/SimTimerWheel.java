@@ -0,0 +1,230 @@
+package be.uantwerpen.sc.tools.clock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel on simulation time
+ * Not thread-safe: scheduling, cancelling and advancing must happen on the thread that owns the wheel
+ * Tasks never run before their deadline and at most one resolution step after it
+ */
+public class SimTimerWheel implements SimTimer
+{
+    /**
+     * Length of one wheel slot in ms
+     */
+    private final long resolution;
+
+    private final Slot[] wheel;
+    private final int mask;
+
+    /**
+     * Last processed slot (time / resolution)
+     */
+    private long currentTick;
+
+    /**
+     * Number of pending timeouts
+     */
+    private int size;
+
+    /**
+     * Earliest time a pending timeout can fire, may be too early after cancellations
+     */
+    private long nextFireTime;
+
+    /**
+     * @param startTime Current simulation time in ms
+     * @param resolution Length of one slot in ms
+     * @param wheelSize Number of slots, rounded up to a power of two
+     */
+    public SimTimerWheel(long startTime, long resolution, int wheelSize)
+    {
+        if(resolution <= 0 || wheelSize <= 0)
+            throw new IllegalArgumentException("Resolution and wheel size must be positive!");
+
+        int slots = Integer.highestOneBit(wheelSize);
+        if(slots < wheelSize)
+            slots <<= 1;
+
+        this.resolution = resolution;
+        this.wheel = new Slot[slots];
+        this.mask = slots - 1;
+
+        for(int i = 0; i < slots; i++)
+            this.wheel[i] = new Slot();
+
+        this.currentTick = startTime / resolution;
+        this.size = 0;
+        this.nextFireTime = Long.MAX_VALUE;
+    }
+
+    @Override
+    public Timeout schedule(long deadline, Runnable task)
+    {
+        //Round up so a task never fires early, expired deadlines fire on the next advance
+        long tick = Math.max((deadline + this.resolution - 1) / this.resolution, this.currentTick + 1);
+
+        WheelTimeout timeout = new WheelTimeout(deadline, tick, task);
+        this.wheel[(int)(tick & this.mask)].add(timeout);
+        this.size++;
+
+        this.nextFireTime = Math.min(this.nextFireTime, tick * this.resolution);
+
+        return timeout;
+    }
+
+    /**
+     * Runs all tasks that expired at the given time
+     * @param currentTime Current simulation time in ms
+     * @return Number of tasks that ran
+     */
+    public int advance(long currentTime)
+    {
+        long targetTick = currentTime / this.resolution;
+
+        if(targetTick <= this.currentTick)
+            return 0;
+
+        List<WheelTimeout> expired = null;
+
+        //A jump of more than one rotation visits every slot once
+        long slots = Math.min(targetTick - this.currentTick, this.wheel.length);
+
+        for(long tick = this.currentTick + 1; tick <= this.currentTick + slots; tick++)
+        {
+            Slot slot = this.wheel[(int)(tick & this.mask)];
+            WheelTimeout timeout = slot.head;
+
+            while(timeout != null)
+            {
+                WheelTimeout next = timeout.next;
+
+                if(timeout.tick <= targetTick)
+                {
+                    slot.remove(timeout);
+                    this.size--;
+
+                    if(expired == null)
+                        expired = new ArrayList<>();
+
+                    expired.add(timeout);
+                }
+
+                timeout = next;
+            }
+        }
+
+        this.currentTick = targetTick;
+
+        if(this.nextFireTime <= currentTime)
+            this.nextFireTime = this.findNextFireTime();
+
+        if(expired == null)
+            return 0;
+
+        //Run tasks after the wheel is consistent again, tasks may schedule new timeouts
+        for(WheelTimeout timeout : expired)
+            timeout.task.run();
+
+        return expired.size();
+    }
+
+    /**
+     * @return Simulation time in ms at which the next task can fire, Long.MAX_VALUE if nothing is scheduled
+     */
+    public long nextFireTime()
+    {
+        return this.nextFireTime;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    private long findNextFireTime()
+    {
+        long tick = Long.MAX_VALUE;
+
+        for(Slot slot : this.wheel)
+        {
+            for(WheelTimeout timeout = slot.head; timeout != null; timeout = timeout.next)
+                tick = Math.min(tick, timeout.tick);
+        }
+
+        return tick == Long.MAX_VALUE ? Long.MAX_VALUE : tick * this.resolution;
+    }
+
+    private static class Slot
+    {
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        private void add(WheelTimeout timeout)
+        {
+            timeout.slot = this;
+            timeout.prev = this.tail;
+
+            if(this.tail != null)
+                this.tail.next = timeout;
+            else
+                this.head = timeout;
+
+            this.tail = timeout;
+        }
+
+        private void remove(WheelTimeout timeout)
+        {
+            if(timeout.prev != null)
+                timeout.prev.next = timeout.next;
+            else
+                this.head = timeout.next;
+
+            if(timeout.next != null)
+                timeout.next.prev = timeout.prev;
+            else
+                this.tail = timeout.prev;
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.slot = null;
+        }
+    }
+
+    private class WheelTimeout implements Timeout
+    {
+        private final long deadline;
+        private final long tick;
+        private final Runnable task;
+
+        private Slot slot;
+        private WheelTimeout prev;
+        private WheelTimeout next;
+
+        private WheelTimeout(long deadline, long tick, Runnable task)
+        {
+            this.deadline = deadline;
+            this.tick = tick;
+            this.task = task;
+        }
+
+        @Override
+        public long getDeadline()
+        {
+            return this.deadline;
+        }
+
+        @Override
+        public boolean cancel()
+        {
+            if(this.slot == null)
+                return false;
+
+            this.slot.remove(this);
+            size--;
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package be.uantwerpen.sc.tools.clock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulation time only moves when the scheduler advances it
+ * Used to run the simulation as fast as possible without sleeping
+ */
+public class SteppedClock implements SimClock
+{
+    private final AtomicLong time;
+
+    public SteppedClock(long startMillis)
+    {
+        this.time = new AtomicLong(startMillis);
+    }
+
+    @Override
+    public long currentTimeMillis()
+    {
+        return this.time.get();
+    }
+
+    @Override
+    public long toRealNanos(long simulatedMillis)
+    {
+        return 0L;
+    }
+
+    @Override
+    public boolean isStepped()
+    {
+        return true;
+    }
+
+    @Override
+    public void advance(long millis)
+    {
+        this.time.addAndGet(millis);
+    }
+}
@@ -0,0 +1,19 @@
+package be.uantwerpen.sc.tools.clock;
+
+/**
+ * Simulation time equals real time
+ */
+public class WallClock implements SimClock
+{
+    @Override
+    public long currentTimeMillis()
+    {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long toRealNanos(long simulatedMillis)
+    {
+        return simulatedMillis * 1000000L;
+    }
+}
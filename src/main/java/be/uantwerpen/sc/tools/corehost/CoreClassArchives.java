@@ -0,0 +1,181 @@
+package be.uantwerpen.sc.tools.corehost;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Class data archives (AppCDS) of the core jars, one per jar version and JDK of the cores
+ * The first core of a jar boots normally and dumps the classes it loaded when it exits,
+ * later cores map that archive instead of loading and verifying the classes again
+ * Needs a JDK 13+ java on the path of the simulator, older JDKs run the cores without archive
+ */
+public class CoreClassArchives
+{
+    /**
+     * First JDK with dynamic archives (-XX:ArchiveClassesAtExit)
+     */
+    private static final int MIN_JAVA_VERSION = 13;
+
+    private static final Pattern VERSION_PATTERN = Pattern.compile("version \"(1\\.)?(\\d+)");
+
+    private static final File archiveDirectory = new File(System.getProperty("java.io.tmpdir"), "simcore/cds");
+
+    /**
+     * Archives that are being dumped by a core
+     */
+    private static final Map<File, Boolean> dumping = new ConcurrentHashMap<>();
+
+    private static volatile Integer javaVersion = null;
+
+    private CoreClassArchives()
+    {
+    }
+
+    /**
+     * Prepares a launch of a core process
+     * @param jarFile Core jar
+     * @param version Version of the core
+     * @return Archive arguments of the launch
+     */
+    public static Launch prepare(File jarFile, String version)
+    {
+        int java = getJavaVersion();
+
+        if(java < MIN_JAVA_VERSION)
+            return new Launch(null, null);
+
+        String name = jarFile.getName().replaceAll("\\.jar$", "") + "-" + version + "-" + Long.toHexString(jarFile.lastModified()) + "-jdk" + java;
+        File archive = new File(archiveDirectory, name.replaceAll("[^A-Za-z0-9._-]", "_") + ".jsa");
+
+        if(archive.exists())
+            return new Launch(archive, null);
+
+        //Only one core dumps the archive, the others boot without
+        if(dumping.putIfAbsent(archive, Boolean.TRUE) != null)
+            return new Launch(null, null);
+
+        archiveDirectory.mkdirs();
+
+        return new Launch(archive, new File(archive.getPath() + "." + System.nanoTime() + ".tmp"));
+    }
+
+    /**
+     * @return Feature version of the java command the cores run on, 0 if unknown
+     */
+    private static int getJavaVersion()
+    {
+        if(javaVersion == null)
+        {
+            synchronized(CoreClassArchives.class)
+            {
+                if(javaVersion == null)
+                    javaVersion = readJavaVersion();
+            }
+        }
+
+        return javaVersion;
+    }
+
+    private static int readJavaVersion()
+    {
+        try {
+            Process process = new ProcessBuilder("java", "-version").redirectErrorStream(true).start();
+
+            try(BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+
+                while((line = reader.readLine()) != null)
+                {
+                    Matcher matcher = VERSION_PATTERN.matcher(line);
+
+                    if(matcher.find())
+                    {
+                        int version = Integer.parseInt(matcher.group(2));
+
+                        if(version < MIN_JAVA_VERSION)
+                            System.err.println("Core JVM version " + version + " has no class data archives, cores boot without.");
+
+                        return version;
+                    }
+                }
+            }
+            finally {
+                process.waitFor(5, TimeUnit.SECONDS);
+            }
+        }
+        catch(IOException e) {
+            System.err.println("Could not determine the core JVM version: " + e.getMessage());
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return 0;
+    }
+
+    /**
+     * Archive use of one core process
+     */
+    public static class Launch
+    {
+        private final File archive;
+        private final File dumpFile;
+
+        private Launch(File archive, File dumpFile)
+        {
+            this.archive = archive;
+            this.dumpFile = dumpFile;
+        }
+
+        /**
+         * @return JVM arguments: use the archive, dump it at exit or none
+         */
+        public List<String> getJvmArguments()
+        {
+            if(this.archive == null)
+                return Collections.emptyList();
+
+            if(this.dumpFile != null)
+                return Collections.singletonList("-XX:ArchiveClassesAtExit=" + this.dumpFile.getPath());
+
+            return Collections.singletonList("-XX:SharedArchiveFile=" + this.archive.getPath());
+        }
+
+        /**
+         * Must be called once the core process has ended
+         * @param cleanExit True if the core exited by itself, a killed core leaves no usable archive
+         */
+        public void complete(boolean cleanExit)
+        {
+            if(this.dumpFile == null)
+                return;
+
+            try {
+                if(cleanExit && this.dumpFile.length() > 0)
+                {
+                    Files.move(this.dumpFile.toPath(), this.archive.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    System.out.println("Created class data archive " + this.archive.getName());
+                }
+                else
+                    Files.deleteIfExists(this.dumpFile.toPath());
+            }
+            catch(IOException e) {
+                System.err.println("Could not store class data archive " + this.archive + ": " + e.getMessage());
+            }
+            finally {
+                dumping.remove(this.archive);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package be.uantwerpen.sc.tools.corehost;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Class loaders for the core jars, one per jar version shared by all cores of that jar
+ * Core classes are loaded once and their compiled code is shared by the fleet
+ * The loaders only see the core jar and the JDK, never the classes of the simulator
+ * Spring Boot jars are unpacked to the temporary directory, nested jars can not be loaded from the jar itself
+ */
+public class CoreClassLoaders
+{
+    private static final Map<String, CoreJar> jars = new ConcurrentHashMap<>();
+
+    private CoreClassLoaders()
+    {
+    }
+
+    /**
+     * @param jarFile Core jar
+     * @return Loader and main class of the jar, loaded on first use
+     */
+    public static CoreJar get(File jarFile) throws IOException
+    {
+        File file = jarFile.getCanonicalFile();
+        String key = file.getPath() + "@" + file.lastModified();
+
+        CoreJar jar = jars.get(key);
+
+        if(jar != null)
+            return jar;
+
+        synchronized(jars)
+        {
+            jar = jars.get(key);
+
+            if(jar == null)
+            {
+                jar = load(file);
+                jars.put(key, jar);
+            }
+        }
+
+        return jar;
+    }
+
+    private static CoreJar load(File file) throws IOException
+    {
+        List<URL> urls = new ArrayList<>();
+        String mainClass;
+
+        try(JarFile jarFile = new JarFile(file))
+        {
+            Manifest manifest = jarFile.getManifest();
+
+            if(manifest == null)
+                throw new IOException("No manifest in core jar: " + file);
+
+            Attributes attributes = manifest.getMainAttributes();
+            String startClass = attributes.getValue("Start-Class");
+
+            if(startClass != null)
+            {
+                //Spring Boot jar: application classes in BOOT-INF/classes (or the root) and libraries in BOOT-INF/lib or lib
+                Path directory = Files.createDirectories(new File(System.getProperty("java.io.tmpdir"), "simcore/" + file.getName() + "-" + file.lastModified()).toPath());
+                Path classes = directory.resolve("classes");
+                boolean bootInf = false;
+
+                Enumeration<JarEntry> entries = jarFile.entries();
+
+                while(entries.hasMoreElements())
+                {
+                    JarEntry entry = entries.nextElement();
+                    String name = entry.getName();
+
+                    if(entry.isDirectory())
+                        continue;
+
+                    if((name.startsWith("BOOT-INF/lib/") || name.startsWith("lib/")) && name.endsWith(".jar"))
+                    {
+                        Path library = directory.resolve("lib").resolve(name.substring(name.lastIndexOf('/') + 1));
+                        extract(jarFile, entry, library);
+                        urls.add(library.toUri().toURL());
+                    }
+                    else if(name.startsWith("BOOT-INF/classes/"))
+                    {
+                        Path target = classes.resolve(name.substring("BOOT-INF/classes/".length())).normalize();
+
+                        if(!target.startsWith(classes))
+                            throw new IOException("Invalid entry in core jar: " + name);
+
+                        extract(jarFile, entry, target);
+                        bootInf = true;
+                    }
+                }
+
+                urls.add(0, bootInf ? classes.toUri().toURL() : file.toURI().toURL());
+                mainClass = startClass;
+            }
+            else
+            {
+                mainClass = attributes.getValue(Attributes.Name.MAIN_CLASS);
+                urls.add(file.toURI().toURL());
+            }
+
+            if(mainClass == null)
+                throw new IOException("No main class in core jar: " + file);
+        }
+
+        //Parent is the platform loader: JDK classes only
+        ClassLoader loader = new URLClassLoader(urls.toArray(new URL[0]), ClassLoader.getSystemClassLoader().getParent());
+
+        return new CoreJar(loader, mainClass);
+    }
+
+    private static void extract(JarFile jarFile, JarEntry entry, Path target) throws IOException
+    {
+        //Unpacked files of an earlier run are reused
+        if(Files.exists(target) && Files.size(target) == entry.getSize())
+            return;
+
+        Files.createDirectories(target.getParent());
+
+        //Warm pool launchers unpack the same jar at the same time, a file only appears once it is complete
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+        try(InputStream input = jarFile.getInputStream(entry)) {
+            Files.copy(input, temporary, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    public static class CoreJar
+    {
+        private final ClassLoader classLoader;
+        private final String mainClass;
+
+        private CoreJar(ClassLoader classLoader, String mainClass)
+        {
+            this.classLoader = classLoader;
+            this.mainClass = mainClass;
+        }
+
+        public ClassLoader getClassLoader()
+        {
+            return this.classLoader;
+        }
+
+        public String getMainClass()
+        {
+            return this.mainClass;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package be.uantwerpen.sc.tools.corehost;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.function.IntConsumer;
+
+/**
+ * System view of one in-process core: its own system properties, console input and console output
+ * The context belongs to the threads of the core, threads started by the core inherit it
+ * System.getProperty, System.in and System.out are routed to the context of the calling thread, see CoreSystem
+ */
+public class CoreContext
+{
+    private static final InheritableThreadLocal<CoreContext> current = new InheritableThreadLocal<>();
+
+    /**
+     * Properties set for this core, other properties come from the simulator
+     */
+    private final Properties properties;
+    private final InputStream in;
+    private final OutputStream out;
+
+    /**
+     * Called with the status when a thread of the core calls System.exit, see CoreSystem
+     */
+    private volatile IntConsumer exitHandler;
+
+    public CoreContext(Properties properties, InputStream in, OutputStream out)
+    {
+        this.properties = properties;
+        this.in = in;
+        this.out = out;
+        this.exitHandler = null;
+    }
+
+    /**
+     * @return Context of the core running the calling thread, null for simulator threads
+     */
+    public static CoreContext current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Runs the task with this context, threads started by the task belong to the core
+     * @param task Task of the core
+     */
+    public void run(Runnable task)
+    {
+        CoreContext previous = current.get();
+        current.set(this);
+
+        try {
+            task.run();
+        }
+        finally {
+            if(previous != null)
+                current.set(previous);
+            else
+                current.remove();
+        }
+    }
+
+    public Properties getProperties()
+    {
+        return this.properties;
+    }
+
+    public InputStream getIn()
+    {
+        return this.in;
+    }
+
+    public OutputStream getOut()
+    {
+        return this.out;
+    }
+
+    public void setExitHandler(IntConsumer exitHandler)
+    {
+        this.exitHandler = exitHandler;
+    }
+
+    /**
+     * The core called System.exit, the call itself is blocked
+     * @param status Exit status of the core
+     */
+    void exit(int status)
+    {
+        IntConsumer handler = this.exitHandler;
+
+        if(handler != null)
+            handler.accept(status);
+    }
+}
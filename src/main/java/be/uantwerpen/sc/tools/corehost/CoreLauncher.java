@@ -0,0 +1,93 @@
+package be.uantwerpen.sc.tools.corehost;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Main class of the pre-launched core processes of the warm pool, see SimCorePoolService
+ * Loads the main class of the core jar (the Start-Class and nested libraries of a Spring Boot jar, see CoreClassLoaders)
+ * and waits for the identity of its car on stdin:
+ * "START" followed by the -Dkey=value arguments of the core, separated by tabs
+ * The arguments become system properties before the main method of the core is called, the core then owns stdin and stdout
+ *
+ * Only depends on the JDK and CoreClassLoaders, the pool copies these classes out of the simulator to run them: java -cp <dir> CoreLauncher <core jar>
+ */
+public class CoreLauncher
+{
+    /**
+     * Line printed once the core jar is loaded and the launcher waits for its car
+     */
+    public static final String READY_MESSAGE = "CoreLauncher ready";
+
+    public static final String START_COMMAND = "START";
+
+    public static void main(String[] args) throws Exception
+    {
+        if(args.length != 1)
+        {
+            System.err.println("Usage: java -cp <dir> " + CoreLauncher.class.getName() + " <core jar>");
+            System.exit(2);
+        }
+
+        File jar = new File(args[0]);
+        CoreClassLoaders.CoreJar coreJar;
+
+        try {
+            coreJar = CoreClassLoaders.get(jar);
+        }
+        catch(IOException e) {
+            System.err.println("Could not load core jar " + jar + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        //Load and initialize the main class of the core up front, a Spring Boot jar starts at its Start-Class instead of its launcher
+        ClassLoader loader = coreJar.getClassLoader();
+        Method main = Class.forName(coreJar.getMainClass(), true, loader).getMethod("main", String[].class);
+
+        System.out.println(READY_MESSAGE);
+        System.out.flush();
+
+        String command = readLine(System.in);
+
+        //Pool is shut down
+        if(command == null || !command.startsWith(START_COMMAND))
+            return;
+
+        for(String argument : command.split("\t"))
+        {
+            int separator = argument.indexOf('=');
+
+            if(argument.startsWith("-D") && separator > 2)
+                System.setProperty(argument.substring(2, separator), argument.substring(separator + 1));
+        }
+
+        System.setProperty("java.class.path", jar.getPath());
+        Thread.currentThread().setContextClassLoader(loader);
+
+        main.invoke(null, (Object) new String[0]);
+    }
+
+    /**
+     * Reads one line byte by byte, the remaining input stays available for the core
+     */
+    private static String readLine(InputStream input) throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        int b;
+
+        while((b = input.read()) != '\n')
+        {
+            if(b < 0)
+                return line.length() > 0 ? line.toString() : null;
+
+            if(b != '\r')
+                line.append((char) b);
+        }
+
+        return new String(line.toString().getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+    }
+}
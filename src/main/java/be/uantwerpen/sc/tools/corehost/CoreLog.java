@@ -0,0 +1,194 @@
+package be.uantwerpen.sc.tools.corehost;
+
+import be.uantwerpen.sc.services.SimCoreOutputService;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Console output of one core: written to a rolling log file, the last lines are kept in memory
+ * Echoing the lines on the console of the simulator is optional and can be sampled
+ * Created by SimCoreLogService, which also flushes the file periodically
+ */
+public class CoreLog implements SimCoreOutputService.Listener
+{
+    private final int coreId;
+    private final File file;
+    private final long maxFileSize;
+    private final int maxFiles;
+
+    /**
+     * Echo every echoSample-th line, 0 = no echo
+     */
+    private final int echoSample;
+
+    /**
+     * Last lines, tailStart is the oldest
+     */
+    private final String[] tail;
+    private int tailStart;
+    private int tailSize;
+
+    private Writer writer;
+    private long fileSize;
+    private long lineCount;
+    private boolean failed;
+
+    public CoreLog(int coreId, File file, long maxFileSize, int maxFiles, int tailLines, int echoSample)
+    {
+        this.coreId = coreId;
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        this.echoSample = echoSample;
+        this.tail = new String[Math.max(tailLines, 1)];
+        this.tailStart = 0;
+        this.tailSize = 0;
+        this.writer = null;
+        this.fileSize = file.length();
+        this.lineCount = 0L;
+        this.failed = false;
+    }
+
+    @Override
+    public synchronized void onLine(String line)
+    {
+        //Tail
+        int index = (this.tailStart + this.tailSize) % this.tail.length;
+        this.tail[index] = line;
+
+        if(this.tailSize < this.tail.length)
+            this.tailSize++;
+        else
+            this.tailStart = (this.tailStart + 1) % this.tail.length;
+
+        if(this.echoSample > 0 && this.lineCount % this.echoSample == 0)
+            CoreSystem.getSimulatorOut().println("#Core " + this.coreId + ": " + line);
+
+        this.lineCount++;
+        this.write(line);
+    }
+
+    /**
+     * @return Last lines of the core, oldest first
+     */
+    public synchronized List<String> getTail()
+    {
+        List<String> lines = new ArrayList<>(this.tailSize);
+
+        for(int i = 0; i < this.tailSize; i++)
+            lines.add(this.tail[(this.tailStart + i) % this.tail.length]);
+
+        return lines;
+    }
+
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * Writes the buffered lines to the log file
+     */
+    public synchronized void flush()
+    {
+        if(this.writer == null)
+            return;
+
+        try {
+            this.writer.flush();
+        }
+        catch(IOException e) {
+            this.fail(e);
+        }
+    }
+
+    /**
+     * Flushes and closes the log file, a later line opens it again
+     */
+    public synchronized void close()
+    {
+        if(this.writer == null)
+            return;
+
+        try {
+            this.writer.close();
+        }
+        catch(IOException e) {
+            System.err.println("Could not close core log " + this.file + "!");
+        }
+
+        this.writer = null;
+    }
+
+    private void write(String line)
+    {
+        if(this.failed)
+            return;
+
+        try {
+            if(this.fileSize >= this.maxFileSize)
+                this.roll();
+
+            if(this.writer == null)
+            {
+                File directory = this.file.getParentFile();
+
+                if(directory != null)
+                    directory.mkdirs();
+
+                this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, true), StandardCharsets.UTF_8), 8192);
+            }
+
+            this.writer.write(line);
+            this.writer.write('\n');
+            this.fileSize += line.length() + 1;
+        }
+        catch(IOException e) {
+            this.fail(e);
+        }
+    }
+
+    /**
+     * Moves core.log to core.log.1, core.log.1 to core.log.2 and so on, the oldest file is removed
+     */
+    private void roll()
+    {
+        this.close();
+
+        for(int i = this.maxFiles; i > 0; i--)
+        {
+            File source = i > 1 ? new File(this.file.getPath() + "." + (i - 1)) : this.file;
+            File target = new File(this.file.getPath() + "." + i);
+
+            if(source.exists())
+            {
+                target.delete();
+                source.renameTo(target);
+            }
+        }
+
+        if(this.maxFiles <= 0)
+            this.file.delete();
+
+        this.fileSize = 0L;
+    }
+
+    /**
+     * Stops writing the log file after an error, the tail is still kept
+     */
+    private void fail(IOException e)
+    {
+        System.err.println("Could not write core log " + this.file + ": " + e.getMessage());
+
+        this.failed = true;
+        this.writer = null;
+    }
+}
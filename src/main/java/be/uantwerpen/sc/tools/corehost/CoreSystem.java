@@ -0,0 +1,278 @@
+package be.uantwerpen.sc.tools.corehost;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.security.Permission;
+import java.util.Properties;
+
+/**
+ * Routes the system properties and the console of the simulator JVM to the core contexts
+ * Threads without core context keep using the properties and console of the simulator
+ * Enumerating the system properties always shows the properties of the simulator
+ * System.exit on a core thread is blocked by a security manager, it would stop the simulator and all other cores
+ */
+public class CoreSystem
+{
+    private static boolean installed = false;
+    private static volatile boolean exitGuarded = false;
+
+    /**
+     * Console of the simulator, also used by the cores to echo their output
+     */
+    private static volatile PrintStream simulatorOut = System.out;
+
+    private CoreSystem()
+    {
+    }
+
+    /**
+     * Replaces System properties, in, out and err by routing versions, only the first call has effect
+     */
+    public static synchronized void install()
+    {
+        if(installed)
+            return;
+
+        simulatorOut = System.out;
+
+        System.setProperties(new RoutingProperties(System.getProperties()));
+        System.setIn(new RoutingInputStream(System.in));
+        System.setOut(new PrintStream(new RoutingOutputStream(System.out), true));
+        System.setErr(new PrintStream(new RoutingOutputStream(System.err), true));
+
+        installExitGuard();
+
+        installed = true;
+    }
+
+    /**
+     * @return True if System.exit of the cores is blocked
+     */
+    public static boolean isExitGuarded()
+    {
+        return exitGuarded;
+    }
+
+    /**
+     * The security manager is deprecated: JDK 17 prints a warning, JDK 18+ only allows it with -Djava.security.manager=allow
+     */
+    private static void installExitGuard()
+    {
+        if(System.getSecurityManager() != null)
+        {
+            System.err.println("A security manager is already installed, System.exit of a hosted core stops the simulator!");
+            return;
+        }
+
+        try {
+            System.setSecurityManager(new ExitGuard());
+            exitGuarded = true;
+        }
+        catch(UnsupportedOperationException | SecurityException e) {
+            System.err.println("System.exit of hosted cores can not be blocked on this JVM, run the simulator with -Djava.security.manager=allow. "
+                    + "A core calling System.exit stops the simulator!");
+        }
+    }
+
+    /**
+     * @return Console output of the simulator, also when called from a core thread
+     */
+    public static PrintStream getSimulatorOut()
+    {
+        return simulatorOut;
+    }
+
+    /**
+     * Thrown instead of exiting the JVM when a core calls System.exit
+     */
+    public static class ExitException extends SecurityException
+    {
+        private final int status;
+
+        private ExitException(int status)
+        {
+            super("System.exit(" + status + ") of a hosted core is blocked");
+            this.status = status;
+        }
+
+        public int getStatus()
+        {
+            return this.status;
+        }
+    }
+
+    /**
+     * Security manager that only blocks System.exit on core threads, every other permission is granted
+     */
+    private static class ExitGuard extends SecurityManager
+    {
+        @Override
+        public void checkPermission(Permission permission)
+        {
+        }
+
+        @Override
+        public void checkPermission(Permission permission, Object context)
+        {
+        }
+
+        @Override
+        public void checkExit(int status)
+        {
+            CoreContext context = CoreContext.current();
+
+            if(context != null)
+            {
+                context.exit(status);
+                throw new ExitException(status);
+            }
+        }
+    }
+
+    /**
+     * System properties of the simulator, with the properties of the core context on top
+     */
+    private static class RoutingProperties extends Properties
+    {
+        private RoutingProperties(Properties properties)
+        {
+            super();
+            this.putAll(properties);
+        }
+
+        @Override
+        public String getProperty(String key)
+        {
+            CoreContext context = CoreContext.current();
+
+            if(context != null)
+            {
+                Object value = context.getProperties().get(key);
+
+                if(value != null)
+                    return value instanceof String ? (String) value : null;
+            }
+
+            return super.getProperty(key);
+        }
+
+        @Override
+        public Object get(Object key)
+        {
+            CoreContext context = CoreContext.current();
+
+            if(context != null)
+            {
+                Object value = context.getProperties().get(key);
+
+                if(value != null)
+                    return value;
+            }
+
+            return super.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            CoreContext context = CoreContext.current();
+
+            return (context != null && context.getProperties().containsKey(key)) || super.containsKey(key);
+        }
+
+        @Override
+        public synchronized Object put(Object key, Object value)
+        {
+            CoreContext context = CoreContext.current();
+
+            //Properties set by a core stay in its own view
+            if(context != null)
+                return context.getProperties().put(key, value);
+
+            return super.put(key, value);
+        }
+
+        @Override
+        public synchronized Object remove(Object key)
+        {
+            CoreContext context = CoreContext.current();
+
+            if(context != null)
+                return context.getProperties().remove(key);
+
+            return super.remove(key);
+        }
+    }
+
+    private static class RoutingInputStream extends InputStream
+    {
+        private final InputStream simulator;
+
+        private RoutingInputStream(InputStream simulator)
+        {
+            this.simulator = simulator;
+        }
+
+        private InputStream target()
+        {
+            CoreContext context = CoreContext.current();
+
+            return context != null ? context.getIn() : this.simulator;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            return this.target().read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException
+        {
+            return this.target().read(buffer, offset, length);
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return this.target().available();
+        }
+    }
+
+    private static class RoutingOutputStream extends OutputStream
+    {
+        private final OutputStream simulator;
+
+        private RoutingOutputStream(OutputStream simulator)
+        {
+            this.simulator = simulator;
+        }
+
+        private OutputStream target()
+        {
+            CoreContext context = CoreContext.current();
+
+            return context != null ? context.getOut() : this.simulator;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            this.target().write(b);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException
+        {
+            this.target().write(buffer, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            this.target().flush();
+        }
+    }
+}
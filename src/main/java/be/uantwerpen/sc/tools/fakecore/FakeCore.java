@@ -0,0 +1,485 @@
+package be.uantwerpen.sc.tools.fakecore;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Stand-in for the RobotCore jar, used to load test the simulator without a backend
+ * Connects to the task and event port of a car like the real core and drives routes of
+ * FOLLOWLINE and TURN commands while polling DRIVE DISTANCE and reading tags
+ * Measures the command to ACK and command to event latency
+ *
+ * Runs in-process (FakeSimCore), hosted by the simulator (HostedSimCore) or as a tiny process:
+ * java -Dcar.driver.taskport=.. -Dcar.driver.eventport=.. -jar RobotSim-<version>-fakecore.jar
+ * Only depends on the JDK
+ */
+public class FakeCore implements Runnable
+{
+    /**
+     * Line printed when the core is connected, SimCore waits for it before the car is running
+     */
+    public static final String BOOT_MESSAGE = "SmartCar Core (fake) started";
+
+    /**
+     * Time to keep retrying the connection to the car (in ms)
+     */
+    private static final long CONNECT_TIMEOUT = 10000L;
+
+    /**
+     * Maximum time to wait for a drive to finish before the route continues (in ms)
+     */
+    private static final long DRIVE_TIMEOUT = 60000L;
+
+    /**
+     * Latencies of all fake cores of this process
+     */
+    private static final LatencyHistogram totalAckLatency = new LatencyHistogram();
+    private static final LatencyHistogram totalEventLatency = new LatencyHistogram();
+
+    private final String host;
+    private final int taskPort;
+    private final int eventPort;
+    private final String robotId;
+
+    /**
+     * Send "ROBOT <id>" as first line, needed on shared (multiplexed) ports
+     */
+    private final boolean handshake;
+
+    /**
+     * In-memory connector of the simulator (car.driver.connector), null to connect over TCP
+     */
+    private final IntFunction<Socket> connector;
+
+    /**
+     * Interval of the DRIVE DISTANCE polling while driving (in ms)
+     */
+    private final long pollInterval;
+
+    /**
+     * Number of routes to drive, 0 drives until stopped
+     */
+    private final int routes;
+
+    /**
+     * Send FLUSH, TURN and FOLLOWLINE in one write like a core planning ahead
+     */
+    private final boolean pipeline;
+
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+    private final LatencyHistogram eventLatency = new LatencyHistogram();
+    private final LatencyHistogram driveTime = new LatencyHistogram();
+
+    /**
+     * Send times of the polls waiting for their event, events arrive in order
+     */
+    private final Queue<Long> distanceRequests = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> tagRequests = new ConcurrentLinkedQueue<>();
+
+    private final Semaphore driveFinished = new Semaphore(0);
+
+    private volatile boolean running;
+    private volatile boolean connected;
+    private Socket taskSocket;
+    private Socket eventSocket;
+    private BufferedReader taskReader;
+    private Writer taskWriter;
+    private long completedRoutes;
+
+    public FakeCore(Properties properties)
+    {
+        this.host = properties.getProperty("car.driver.ip", "localhost");
+        this.taskPort = Integer.parseInt(properties.getProperty("car.driver.taskport", "1313"));
+        this.eventPort = Integer.parseInt(properties.getProperty("car.driver.eventport", "1314"));
+        this.robotId = properties.getProperty("robot.id", "0");
+        this.handshake = Boolean.parseBoolean(properties.getProperty("car.driver.handshake", "false"));
+        this.connector = connector(properties.get("car.driver.connector"));
+        this.pollInterval = Long.parseLong(properties.getProperty("fakecore.poll", "200"));
+        this.routes = Integer.parseInt(properties.getProperty("fakecore.routes", "0"));
+        this.pipeline = Boolean.parseBoolean(properties.getProperty("fakecore.pipeline", "false"));
+        this.running = true;
+        this.connected = false;
+        this.completedRoutes = 0;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        FakeCore core = new FakeCore(System.getProperties());
+
+        Thread coreThread = new Thread(core, "FakeCore-" + core.robotId);
+        coreThread.start();
+
+        //Stop on "exit" like the real core
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+
+        while((line = console.readLine()) != null && !line.trim().equals("exit"));
+
+        core.stop();
+        coreThread.join(5000);
+
+        System.out.println(core.getSummary());
+    }
+
+    @Override
+    public void run()
+    {
+        try {
+            this.connect();
+        }
+        catch(IOException e) {
+            if(this.running)
+                System.err.println("Fake core " + this.robotId + " could not connect to the car: " + e.getMessage());
+
+            this.stop();
+            return;
+        }
+
+        Thread eventThread = new Thread(this::readEvents, "FakeCore-" + this.robotId + "-events");
+        eventThread.setDaemon(true);
+        eventThread.start();
+
+        System.out.println(BOOT_MESSAGE + " for robot " + this.robotId);
+
+        try {
+            boolean left = true;
+
+            while(this.running && (this.routes == 0 || this.completedRoutes < this.routes))
+            {
+                if(this.pipeline)
+                    this.command("DRIVE FLUSH\r\nDRIVE TURN " + (left ? "L" : "R") + "\r\nDRIVE FOLLOWLINE", 3);
+                else
+                {
+                    this.command("DRIVE TURN " + (left ? "L" : "R"), 1);
+                    this.awaitDrive();
+                    this.command("DRIVE FOLLOWLINE", 1);
+                }
+
+                this.awaitDrive();
+
+                if(this.pipeline)
+                    this.awaitDrive(); //Turn and follow line both finish
+
+                this.tagRequests.offer(System.nanoTime());
+                this.command("TAG READ UID", 1);
+
+                left = !left;
+                this.completedRoutes++;
+            }
+        }
+        catch(IOException e) {
+            if(this.running)
+                System.err.println("Fake core " + this.robotId + " lost the connection to the car: " + e.getMessage());
+        }
+        catch(InterruptedException e) {
+            //Stopped
+        }
+        finally {
+            this.stop();
+        }
+    }
+
+    /**
+     * Closes the connections to the car, the route loop and event reader end
+     */
+    public void stop()
+    {
+        if(!this.running && !this.connected)
+            return;
+
+        this.running = false;
+        this.driveFinished.release();
+
+        synchronized(this)
+        {
+            closeQuietly(this.taskSocket);
+            closeQuietly(this.eventSocket);
+
+            if(this.connected)
+            {
+                this.connected = false;
+
+                totalAckLatency.add(this.ackLatency);
+                totalEventLatency.add(this.eventLatency);
+            }
+        }
+    }
+
+    public boolean isRunning()
+    {
+        return this.running;
+    }
+
+    public boolean isConnected()
+    {
+        return this.connected;
+    }
+
+    /**
+     * @return Command to ACK latency of this core
+     */
+    public LatencyHistogram getAckLatency()
+    {
+        return this.ackLatency;
+    }
+
+    /**
+     * @return DRIVE DISTANCE and TAG READ UID to event latency of this core
+     */
+    public LatencyHistogram getEventLatency()
+    {
+        return this.eventLatency;
+    }
+
+    /**
+     * @return Time between the drive command and its DRIVE EVENT: FINISHED
+     */
+    public LatencyHistogram getDriveTime()
+    {
+        return this.driveTime;
+    }
+
+    public long getCompletedRoutes()
+    {
+        return this.completedRoutes;
+    }
+
+    public String getSummary()
+    {
+        return "Fake core " + this.robotId + ": " + this.completedRoutes + " routes, ack [" + this.ackLatency + "], event [" + this.eventLatency + "], drive [" + this.driveTime + "]";
+    }
+
+    /**
+     * @return Command to ACK latency of all stopped cores of this process
+     */
+    public static LatencyHistogram getTotalAckLatency()
+    {
+        return totalAckLatency;
+    }
+
+    /**
+     * @return Command to event latency of all stopped cores of this process
+     */
+    public static LatencyHistogram getTotalEventLatency()
+    {
+        return totalEventLatency;
+    }
+
+    private void connect() throws IOException
+    {
+        Socket task = this.open(this.taskPort);
+        Socket event;
+
+        try {
+            event = this.open(this.eventPort);
+        }
+        catch(IOException e) {
+            closeQuietly(task);
+            throw e;
+        }
+
+        synchronized(this)
+        {
+            this.taskSocket = task;
+            this.eventSocket = event;
+
+            if(!this.running)
+            {
+                closeQuietly(task);
+                closeQuietly(event);
+                throw new IOException("Stopped");
+            }
+
+            this.connected = true;
+        }
+
+        this.taskReader = new BufferedReader(new InputStreamReader(task.getInputStream(), StandardCharsets.US_ASCII));
+        this.taskWriter = new BufferedWriter(new OutputStreamWriter(task.getOutputStream(), StandardCharsets.US_ASCII));
+
+        //Greeting of the car
+        if(this.taskReader.readLine() == null)
+            throw new EOFException("Task connection closed");
+    }
+
+    /**
+     * Opens a connection to the car, retried until the car is listening
+     */
+    private Socket open(int port) throws IOException
+    {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+
+        while(true)
+        {
+            Socket socket = null;
+
+            try {
+                socket = this.openSocket(port);
+
+                if(this.handshake)
+                {
+                    OutputStream out = socket.getOutputStream();
+                    out.write(("ROBOT " + this.robotId + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                }
+
+                return socket;
+            }
+            catch(IOException e) {
+                closeQuietly(socket);
+
+                if(!this.running || System.currentTimeMillis() > deadline)
+                    throw e;
+            }
+
+            try {
+                Thread.sleep(100);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while connecting");
+            }
+        }
+    }
+
+    private Socket openSocket(int port) throws IOException
+    {
+        if(this.connector != null)
+        {
+            Socket socket = this.connector.apply(port);
+
+            if(socket == null)
+                throw new ConnectException("No car listening on in-memory port " + port);
+
+            return socket;
+        }
+
+        Socket socket = new Socket();
+
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(this.host, port), (int) CONNECT_TIMEOUT);
+        }
+        catch(IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+
+        return socket;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IntFunction<Socket> connector(Object connector)
+    {
+        return connector instanceof IntFunction ? (IntFunction<Socket>) connector : null;
+    }
+
+    /**
+     * Sends the command lines in one write and waits for all responses
+     * @param commands Command lines separated by \r\n
+     * @param count Number of command lines
+     */
+    private void command(String commands, int count) throws IOException
+    {
+        long sent = System.nanoTime();
+
+        this.taskWriter.write(commands);
+        this.taskWriter.write("\r\n");
+        this.taskWriter.flush();
+
+        for(int i = 0; i < count; i++)
+        {
+            String response = this.taskReader.readLine();
+
+            if(response == null)
+                throw new EOFException("Task connection closed");
+
+            //Responses start with the prompt of the previous response
+            if(response.startsWith("# "))
+                response = response.substring(2);
+
+            this.ackLatency.record(System.nanoTime() - sent);
+
+            if(!response.equals("ACK") && !response.equals("NACK"))
+                System.err.println("Fake core " + this.robotId + " received unexpected response: " + response);
+        }
+    }
+
+    /**
+     * Polls the travelled distance until the car reports the end of the drive
+     */
+    private void awaitDrive() throws IOException, InterruptedException
+    {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(DRIVE_TIMEOUT);
+
+        while(this.running && !this.driveFinished.tryAcquire(this.pollInterval, TimeUnit.MILLISECONDS))
+        {
+            if(System.nanoTime() > deadline)
+            {
+                System.err.println("Fake core " + this.robotId + " did not receive the end of the drive, continuing route");
+                return;
+            }
+
+            this.distanceRequests.offer(System.nanoTime());
+            this.command("DRIVE DISTANCE", 1);
+        }
+
+        this.driveTime.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Reads the events of the car until the connection is closed
+     */
+    private void readEvents()
+    {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(this.eventSocket.getInputStream(), StandardCharsets.US_ASCII));
+            String event;
+
+            while((event = reader.readLine()) != null)
+            {
+                if(event.startsWith("DRIVE EVENT: FINISHED"))
+                    this.driveFinished.release();
+                else if(event.startsWith("TRAVEL DISTANCE EVENT"))
+                    this.recordEvent(this.distanceRequests);
+                else if(event.startsWith("TAG DETECTION EVENT"))
+                    this.recordEvent(this.tagRequests);
+            }
+        }
+        catch(IOException e) {
+            //Connection closed
+        }
+
+        this.stop();
+    }
+
+    private void recordEvent(Queue<Long> requests)
+    {
+        Long sent = requests.poll();
+
+        if(sent != null)
+            this.eventLatency.record(System.nanoTime() - sent);
+    }
+
+    private static void closeQuietly(Socket socket)
+    {
+        if(socket == null)
+            return;
+
+        try {
+            socket.close();
+        }
+        catch(IOException e) {
+            //Already closed
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package be.uantwerpen.sc.tools.fakecore;
+
+/**
+ * Log-linear latency histogram in microseconds, every power of two is split in 16 buckets (error below 7%)
+ * Has no dependencies so the fake core can run as a tiny process
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BITS = 4;
+
+    private final long[] counts = new long[64 * SUB_BUCKETS];
+    private long count;
+    private long max;
+    private long total;
+
+    /**
+     * @param nanos Latency in ns
+     */
+    public synchronized void record(long nanos)
+    {
+        long micros = Math.max(nanos / 1000L, 0L);
+
+        this.counts[bucket(micros)]++;
+        this.count++;
+        this.total += micros;
+        this.max = Math.max(this.max, micros);
+    }
+
+    /**
+     * Adds all samples of the other histogram
+     */
+    public synchronized void add(LatencyHistogram other)
+    {
+        synchronized(other)
+        {
+            for(int i = 0; i < this.counts.length; i++)
+                this.counts[i] += other.counts[i];
+
+            this.count += other.count;
+            this.total += other.total;
+            this.max = Math.max(this.max, other.max);
+        }
+    }
+
+    public synchronized long getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * @return Largest latency in us
+     */
+    public synchronized long getMax()
+    {
+        return this.max;
+    }
+
+    /**
+     * @return Mean latency in us
+     */
+    public synchronized double getMean()
+    {
+        return this.count > 0 ? (double) this.total / this.count : 0.0;
+    }
+
+    /**
+     * @param percentile Percentile, e.g. 99.9
+     * @return Upper bound of the bucket holding the percentile in us
+     */
+    public synchronized long getPercentile(double percentile)
+    {
+        if(this.count == 0)
+            return 0L;
+
+        long rank = (long) Math.ceil(this.count * Math.min(percentile, 100.0) / 100.0);
+        long seen = 0L;
+
+        for(int i = 0; i < this.counts.length; i++)
+        {
+            seen += this.counts[i];
+
+            if(seen >= Math.max(rank, 1L))
+                return Math.min(upperBound(i), this.max);
+        }
+
+        return this.max;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "n=" + this.count + " mean=" + Math.round(this.getMean()) + "us p50=" + this.getPercentile(50) + "us p99="
+                + this.getPercentile(99) + "us p99.9=" + this.getPercentile(99.9) + "us max=" + this.max + "us";
+    }
+
+    /**
+     * Values below 32 have their own bucket, above that every power of two has 16 buckets
+     */
+    private static int bucket(long value)
+    {
+        if(value < 2 * SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+
+        return exponent * SUB_BUCKETS + (int) (value >>> exponent);
+    }
+
+    private static long upperBound(int bucket)
+    {
+        if(bucket < 2 * SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket - exponent * SUB_BUCKETS;
+
+        return ((mantissa + 1) << exponent) - 1;
+    }
+}
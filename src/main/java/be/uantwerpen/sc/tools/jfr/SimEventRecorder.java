@@ -0,0 +1,45 @@
+package be.uantwerpen.sc.tools.jfr;
+
+/**
+ * Receives the profiling events of the simulator, durations are in ns
+ * The default methods drop the events
+ */
+public interface SimEventRecorder
+{
+    /**
+     * One simulation tick of a car
+     * @param socketPoll Time spent checking the core connections
+     * @param update Time spent updating the simulation
+     */
+    default void tick(long botId, long socketPoll, long update)
+    {
+    }
+
+    /**
+     * One task command of a core
+     */
+    default void command(long botId, String command, String response, long duration)
+    {
+    }
+
+    /**
+     * One write of queued events to a core
+     */
+    default void eventFlush(long botId, int events, long duration)
+    {
+    }
+
+    /**
+     * One boot phase of a core process
+     */
+    default void coreBootPhase(long botId, String phase, long duration)
+    {
+    }
+
+    /**
+     * One STOMP message of the server
+     */
+    default void workerMessage(long botId, String job, boolean result, long duration)
+    {
+    }
+}
@@ -0,0 +1,72 @@
+package be.uantwerpen.sc.tools.jfr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java Flight Recorder events of the simulator
+ * The event classes need JDK 11+ (src/jfr/java, built by the jfr profile) and are loaded reflectively,
+ * so the project still builds and runs on Java 8 where the events are dropped
+ * Events are only written while a recording with the SmartCity events enabled is running
+ */
+public final class SimFlightRecorder
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimFlightRecorder.class);
+
+    private static final String RECORDER_CLASS = "be.uantwerpen.sc.tools.jfr.JfrEventRecorder";
+
+    private static final SimEventRecorder recorder = createRecorder();
+
+    private SimFlightRecorder()
+    {
+    }
+
+    /**
+     * @return True if the events can be recorded by the running JVM
+     */
+    public static boolean isAvailable()
+    {
+        return recorder.getClass().getName().equals(RECORDER_CLASS);
+    }
+
+    public static void tick(long botId, long socketPoll, long update)
+    {
+        recorder.tick(botId, socketPoll, update);
+    }
+
+    public static void command(long botId, String command, String response, long duration)
+    {
+        recorder.command(botId, command, response, duration);
+    }
+
+    public static void eventFlush(long botId, int events, long duration)
+    {
+        recorder.eventFlush(botId, events, duration);
+    }
+
+    public static void coreBootPhase(long botId, String phase, long duration)
+    {
+        recorder.coreBootPhase(botId, phase, duration);
+    }
+
+    public static void workerMessage(long botId, String job, boolean result, long duration)
+    {
+        recorder.workerMessage(botId, job, result, duration);
+    }
+
+    private static SimEventRecorder createRecorder()
+    {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (SimEventRecorder) Class.forName(RECORDER_CLASS).newInstance();
+        }
+        catch(ClassNotFoundException | LinkageError e) {
+            logger.info("Flight recorder events are not available on this JVM (" + System.getProperty("java.version") + ").");
+        }
+        catch(Exception e) {
+            logger.warn("Could not create flight recorder events.", e);
+        }
+
+        return new SimEventRecorder() {};
+    }
+}
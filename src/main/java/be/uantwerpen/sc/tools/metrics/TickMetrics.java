@@ -0,0 +1,210 @@
+package be.uantwerpen.sc.tools.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.IntCountsHistogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing of the simulation ticks of one car, in us
+ * Every sample is also added to the global metrics of all cars
+ * The tick interval shows whether the simulation still runs at its resolution:
+ * ticks that come more than half a period late are counted as overruns
+ * Without real time period (stepped clock) ticks run back to back and are never counted as overruns
+ */
+public class TickMetrics
+{
+    public enum Timer
+    {
+        /**
+         * Time between the start of two ticks
+         */
+        TICK_INTERVAL,
+        /**
+         * Time spent in one tick
+         */
+        TICK_WORK,
+        /**
+         * Time spent checking the core connections
+         */
+        SOCKET_POLL,
+        /**
+         * Time spent processing core commands
+         */
+        COMMAND_HANDLING
+    }
+
+    /**
+     * Longest tracked duration, longer samples are recorded as this value
+     */
+    private static final long HIGHEST_VALUE = TimeUnit.SECONDS.toMicros(60);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    /**
+     * Samples of all cars, recorded by the tick workers and collected into the global histograms when read
+     */
+    private static final Recorder[] globalRecorders = new Recorder[Timer.values().length];
+    private static final Histogram[] globalHistograms = new Histogram[Timer.values().length];
+    private static final Histogram[] globalIntervals = new Histogram[Timer.values().length];
+    private static final AtomicLong globalTicks = new AtomicLong();
+    private static final AtomicLong globalOverruns = new AtomicLong();
+
+    static
+    {
+        for(int i = 0; i < globalRecorders.length; i++)
+        {
+            globalRecorders[i] = new Recorder(HIGHEST_VALUE, SIGNIFICANT_DIGITS);
+            globalHistograms[i] = new Histogram(HIGHEST_VALUE, SIGNIFICANT_DIGITS);
+        }
+    }
+
+    /**
+     * Histograms of this car, int counts keep the footprint per car small
+     */
+    private final IntCountsHistogram[] histograms = new IntCountsHistogram[Timer.values().length];
+    private final long periodNanos;
+    private long ticks;
+    private long overruns;
+
+    /**
+     * Start of the previous tick, only used by the tick thread
+     */
+    private long lastTickStart;
+
+    /**
+     * @param periodNanos Tick period in real time (ns), 0 if the clock does not follow real time
+     */
+    public TickMetrics(long periodNanos)
+    {
+        this.periodNanos = periodNanos;
+        this.ticks = 0L;
+        this.overruns = 0L;
+        this.lastTickStart = 0L;
+
+        for(int i = 0; i < this.histograms.length; i++)
+            this.histograms[i] = new IntCountsHistogram(HIGHEST_VALUE, SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * Records the interval since the previous tick and the work time of this tick
+     * @param start System.nanoTime() at the start of the tick
+     * @param end System.nanoTime() at the end of the tick
+     */
+    public void recordTick(long start, long end)
+    {
+        boolean overrun = false;
+
+        if(this.lastTickStart != 0L)
+        {
+            long interval = start - this.lastTickStart;
+            overrun = this.periodNanos > 0 && interval > this.periodNanos + this.periodNanos / 2;
+
+            this.record(Timer.TICK_INTERVAL, interval);
+        }
+
+        this.lastTickStart = start;
+        this.record(Timer.TICK_WORK, end - start);
+
+        synchronized(this)
+        {
+            this.ticks++;
+
+            if(overrun)
+                this.overruns++;
+        }
+
+        globalTicks.incrementAndGet();
+
+        if(overrun)
+            globalOverruns.incrementAndGet();
+    }
+
+    /**
+     * @param timer Measured part of the tick
+     * @param nanos Duration in ns
+     */
+    public void record(Timer timer, long nanos)
+    {
+        long micros = Math.min(Math.max(nanos / 1000L, 0L), HIGHEST_VALUE);
+
+        synchronized(this)
+        {
+            this.histograms[timer.ordinal()].recordValue(micros);
+        }
+
+        globalRecorders[timer.ordinal()].recordValue(micros);
+    }
+
+    /**
+     * @return Copy of the histogram of this car (us)
+     */
+    public synchronized Histogram getHistogram(Timer timer)
+    {
+        return this.histograms[timer.ordinal()].copy();
+    }
+
+    public synchronized long getTickCount()
+    {
+        return this.ticks;
+    }
+
+    /**
+     * @return Number of ticks that started more than half a tick period late
+     */
+    public synchronized long getOverrunCount()
+    {
+        return this.overruns;
+    }
+
+    public synchronized void reset()
+    {
+        for(Histogram histogram : this.histograms)
+            histogram.reset();
+
+        this.ticks = 0L;
+        this.overruns = 0L;
+    }
+
+    /**
+     * @return Copy of the histogram of all cars since the start of the simulator (us)
+     */
+    public static Histogram getGlobalHistogram(Timer timer)
+    {
+        int index = timer.ordinal();
+
+        synchronized(globalHistograms)
+        {
+            globalIntervals[index] = globalRecorders[index].getIntervalHistogram(globalIntervals[index]);
+            globalHistograms[index].add(globalIntervals[index]);
+
+            return globalHistograms[index].copy();
+        }
+    }
+
+    public static long getGlobalTickCount()
+    {
+        return globalTicks.get();
+    }
+
+    /**
+     * @return Number of ticks of all cars that started more than half a tick period late
+     */
+    public static long getGlobalOverrunCount()
+    {
+        return globalOverruns.get();
+    }
+
+    /**
+     * @return Percentiles of the histogram, for logging
+     */
+    public static String describe(Histogram histogram)
+    {
+        return "n=" + histogram.getTotalCount()
+                + " p50=" + histogram.getValueAtPercentile(50.0) + "us"
+                + " p99=" + histogram.getValueAtPercentile(99.0) + "us"
+                + " p99.9=" + histogram.getValueAtPercentile(99.9) + "us"
+                + " max=" + histogram.getMaxValue() + "us";
+    }
+}
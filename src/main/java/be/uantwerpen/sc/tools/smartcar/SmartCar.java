@@ -1,7 +1,11 @@
 package be.uantwerpen.sc.tools.smartcar;
 
-import be.uantwerpen.sc.services.sockets.SimSocketService;
-import be.uantwerpen.sc.services.sockets.SimSocket;
+import be.uantwerpen.sc.services.sockets.SimConnection;
+import be.uantwerpen.sc.services.sockets.SimConnectionService;
+import be.uantwerpen.sc.tools.clock.SimClock;
+import be.uantwerpen.sc.tools.clock.SimTimer;
+import be.uantwerpen.sc.tools.clock.WallClock;
+import be.uantwerpen.sc.tools.metrics.TickMetrics;
 import be.uantwerpen.sc.tools.smartcar.handlers.*;
 
 /**
@@ -10,32 +14,53 @@ import be.uantwerpen.sc.tools.smartcar.handlers.*;
 public class SmartCar
 {
     private final static String version = "0.0.1";
-    private SimSocket taskSocket;
-    private SimSocket eventSocket;
+    private SimConnection taskSocket;
+    private SimConnection eventSocket;
     private String name;
     private DriveHandler driveHandler;
     private TaskHandler taskHandler;
     private EventHandler eventHandler;
     private LocationHandler locationHandler;
     private TagReaderHandler tagReaderHandler;
+    private SimClock clock;
+
+    /**
+     * Tick timing, null when not measured
+     */
+    private TickMetrics tickMetrics;
+
+    /**
+     * Connection progress of the core, null when not reported
+     */
+    private ConnectionListener connectionListener;
+    private boolean commandReceived;
 
     public SmartCar()
+    {
+        this(new WallClock());
+    }
+
+    public SmartCar(SimClock clock)
     {
         this.taskSocket = null;
         this.eventSocket = null;
         this.name = "SimBot";
+        this.clock = clock;
+        this.tickMetrics = null;
+        this.connectionListener = null;
+        this.commandReceived = false;
 
-        this.eventHandler = new EventHandler();
+        this.eventHandler = new EventHandler(clock);
         //this.locationHandler = new LocationHandler();
         this.locationHandler = new SimpleLocationHandler();
-        this.driveHandler = new DriveHandler(70, locationHandler);
+        this.driveHandler = new DriveHandler(70, locationHandler, clock);
         this.tagReaderHandler = new TagReaderHandler(locationHandler);
         this.taskHandler = new TaskHandler(driveHandler, eventHandler, locationHandler, tagReaderHandler);
     }
 
-    public SmartCar(String name, float speed)
+    public SmartCar(String name, float speed, SimClock clock)
     {
-        this();
+        this(clock);
         this.name = name;
         this.driveHandler.setSpeed(speed);
     }
@@ -46,6 +71,72 @@ public class SmartCar
         return this.version;
     }
 
+    public SimClock getClock()
+    {
+        return this.clock;
+    }
+
+    /**
+     * Schedules the end of drive tasks on the given timer instead of checking for it every update
+     * @param timer Timer running on the thread that updates this simulation
+     */
+    public void setTimer(SimTimer timer)
+    {
+        this.driveHandler.setTimer(timer, this::drivingFinished);
+    }
+
+    /**
+     * @param maxBatchSize Maximum number of events sent in one write
+     * @param maxDelay Time events may wait for more events before they are sent (in ms)
+     */
+    public void setEventBatching(int maxBatchSize, long maxDelay)
+    {
+        this.eventHandler.setBatching(maxBatchSize, maxDelay);
+    }
+
+    /**
+     * @param commandBudget Maximum number of commands processed per update
+     */
+    public void setCommandBudget(int commandBudget)
+    {
+        this.taskHandler.setCommandBudget(commandBudget);
+    }
+
+    /**
+     * @param botId ID of the simulated bot, used in the flight recorder events
+     */
+    public void setBotId(long botId)
+    {
+        this.taskHandler.setBotId(botId);
+        this.eventHandler.setBotId(botId);
+    }
+
+    /**
+     * @param tickMetrics Metrics the command handling time of every update is recorded in
+     */
+    public void setTickMetrics(TickMetrics tickMetrics)
+    {
+        this.tickMetrics = tickMetrics;
+    }
+
+    /**
+     * @param connectionListener Receives the connection progress of the core
+     */
+    public void setConnectionListener(ConnectionListener connectionListener)
+    {
+        this.connectionListener = connectionListener;
+    }
+
+    public EventHandler getEventHandler()
+    {
+        return this.eventHandler;
+    }
+
+    public DriveHandler getDriveHandler()
+    {
+        return this.driveHandler;
+    }
+
     /**
      * Initializes simulation by initializing the location handler
      * @param startPosition ID start position
@@ -84,7 +175,7 @@ public class SmartCar
         return true;
     }
 
-    public void checkConnections(SimSocketService taskSocketService, SimSocketService eventSocketService)
+    public void checkConnections(SimConnectionService taskSocketService, SimConnectionService eventSocketService)
     {
         boolean socketReset = false;
 
@@ -102,7 +193,11 @@ public class SmartCar
             taskSocket = taskSocketService.getConnection();
 
             if(taskSocket != null) {
-                taskSocket.sendMessage("SmartCity Car: " + this.name + " - Version: " + this.version + "\r\n# "); //Send init message
+                this.commandReceived = false;
+
+                //Send init message
+                if(taskSocket.sendMessage("SmartCity Car: " + this.name + " - Version: " + this.version + "\r\n# ") && this.connectionListener != null)
+                    this.connectionListener.taskConnected();
             }
         }
 
@@ -121,15 +216,18 @@ public class SmartCar
             //Get new connection
             eventSocket = eventSocketService.getConnection();
 
-            if(eventSocket != null)
-                eventSocket.sendMessage("SmartCity Car: " + this.name + " - Version: " + this.version + "\r\n"); //Send init message
+            if(eventSocket != null) {
+                //Send init message
+                if(eventSocket.sendMessage("SmartCity Car: " + this.name + " - Version: " + this.version + "\r\n") && this.connectionListener != null)
+                    this.connectionListener.eventConnected();
+            }
         }
     }
 
-    public void updateSimulation(double elapsedTime)
+    public void updateSimulation()
     {
         //Update drive module
-        if(driveHandler.updatePosition(elapsedTime))
+        if(driveHandler.updatePosition())
         {
             //Target position reached, generate event
             eventHandler.addEvent("DRIVE EVENT: FINISHED");
@@ -138,7 +236,21 @@ public class SmartCar
 
         //Process available tasks
         if(this.taskSocket != null)
-            taskHandler.processMessage(this.taskSocket);
+        {
+            long start = System.nanoTime();
+            int received = taskHandler.processMessages(this.taskSocket);
+
+            if(received > 0 && !this.commandReceived)
+            {
+                this.commandReceived = true;
+
+                if(this.connectionListener != null)
+                    this.connectionListener.firstCommand();
+            }
+
+            if(this.tickMetrics != null)
+                this.tickMetrics.record(TickMetrics.Timer.COMMAND_HANDLING, System.nanoTime() - start);
+        }
 
         //Process available events
         if(this.eventSocket != null)
@@ -149,4 +261,43 @@ public class SmartCar
         //Start next drive task if available and not driving
         driveHandler.startNextDriveTask();
     }
+
+    /**
+     * Target position reached on the drive timer
+     */
+    private void drivingFinished()
+    {
+        eventHandler.addEvent("DRIVE EVENT: FINISHED");
+        locationHandler.drivingDone();
+
+        //Report the event right away instead of at the next update
+        if(this.eventSocket != null)
+            eventHandler.processEvents(this.eventSocket);
+        else
+            this.eventHandler.flushEvents();
+
+        //Continue with the next drive task without waiting for the next update
+        driveHandler.startNextDriveTask();
+    }
+
+    /**
+     * Connection progress of the core of the car
+     */
+    public interface ConnectionListener
+    {
+        /**
+         * Core connected to the task socket and received the init message
+         */
+        void taskConnected();
+
+        /**
+         * Core connected to the event socket and received the init message
+         */
+        void eventConnected();
+
+        /**
+         * First task command of the core received
+         */
+        void firstCommand();
+    }
 }
@@ -0,0 +1,56 @@
+package be.uantwerpen.sc.tools.smartcar.commands;
+
+/**
+ * Parsed car command, reused for every parsed message
+ */
+public class Command
+{
+    private CommandType type;
+    private int value;
+    private boolean hasValue;
+
+    public Command()
+    {
+        this.type = CommandType.UNKNOWN;
+        this.value = 0;
+        this.hasValue = false;
+    }
+
+    public CommandType getType()
+    {
+        return this.type;
+    }
+
+    /**
+     * @return Numeric argument of the command, see CommandType
+     */
+    public int getValue()
+    {
+        return this.value;
+    }
+
+    public boolean hasValue()
+    {
+        return this.hasValue;
+    }
+
+    void set(CommandType type)
+    {
+        this.type = type;
+        this.value = 0;
+        this.hasValue = false;
+    }
+
+    void set(CommandType type, int value)
+    {
+        this.type = type;
+        this.value = value;
+        this.hasValue = true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.hasValue ? this.type + " " + this.value : this.type.toString();
+    }
+}
@@ -0,0 +1,262 @@
+package be.uantwerpen.sc.tools.smartcar.commands;
+
+/**
+ * Single pass parser for the car protocol
+ * Splits the message on spaces without copying it and fills a reusable command,
+ * so parsing a message does not allocate
+ * Not thread-safe, every task handler owns its own parser
+ */
+public class CommandParser
+{
+    private static final int MAX_TOKENS = 5;
+
+    /**
+     * Token positions of the last message: [tokenStart[i], tokenEnd[i])
+     */
+    private final int[] tokenStart = new int[MAX_TOKENS];
+    private final int[] tokenEnd = new int[MAX_TOKENS];
+    private int tokenCount;
+
+    private CharSequence message;
+
+    /**
+     * Value of the last parseInteger call
+     */
+    private int parsedValue;
+
+    /**
+     * Parses a message into the command
+     * @param message Received message without line ending
+     * @param command Command to fill
+     * @return The given command
+     */
+    public Command parse(CharSequence message, Command command)
+    {
+        this.message = message;
+        this.tokenize();
+
+        if(this.tokenCount == 0)
+            command.set(CommandType.UNKNOWN);
+        else if(this.tokenEquals(0, "DRIVE"))
+            this.parseDrive(command);
+        else if(this.tokenEquals(0, "TAG"))
+            command.set(this.tokenCount == 3 && this.tokenEquals(1, "READ") && this.tokenEquals(2, "UID") ? CommandType.TAG_READ_UID : CommandType.UNKNOWN);
+        else if(this.tokenEquals(0, "CAMERA"))
+            command.set(CommandType.CAMERA);
+        else if(this.tokenEquals(0, "LIFT"))
+            command.set(CommandType.LIFT);
+        else if(this.tokenEquals(0, "SPEAKER"))
+            command.set(CommandType.SPEAKER);
+        else if(this.tokenEquals(0, "SHUTDOWN"))
+            command.set(CommandType.SHUTDOWN);
+        else if(this.tokenEquals(0, "HELP") || this.tokenEquals(0, "?"))
+            command.set(CommandType.HELP);
+        else
+            command.set(CommandType.UNKNOWN);
+
+        this.message = null;
+        return command;
+    }
+
+    private void parseDrive(Command command)
+    {
+        if(this.tokenCount < 2)
+            command.set(CommandType.UNKNOWN);
+        else if(this.tokenEquals(1, "ABORT"))
+            command.set(CommandType.DRIVE_ABORT);
+        else if(this.tokenEquals(1, "FLUSH"))
+            command.set(CommandType.DRIVE_FLUSH);
+        else if(this.tokenEquals(1, "PAUSE"))
+            command.set(CommandType.DRIVE_PAUSE);
+        else if(this.tokenEquals(1, "RESUME"))
+            command.set(CommandType.DRIVE_RESUME);
+        else if(this.tokenEquals(1, "DISTANCE"))
+            command.set(CommandType.DRIVE_DISTANCE);
+        else if(this.tokenEquals(1, "FOLLOWLINE"))
+        {
+            if(this.tokenCount == 2)
+                command.set(CommandType.DRIVE_FOLLOWLINE); //Follow line until end of line
+            else
+                this.parseValue(command, CommandType.DRIVE_FOLLOWLINE, 2);
+        }
+        else if(this.tokenEquals(1, "FORWARD"))
+            this.parseValue(command, CommandType.DRIVE_FORWARD, 2);
+        else if(this.tokenEquals(1, "BACKWARDS"))
+            this.parseValue(command, CommandType.DRIVE_BACKWARDS, 2);
+        else if(this.tokenEquals(1, "TURN"))
+        {
+            if(this.tokenCount == 3)
+            {
+                //Turn without angle is a quarter turn
+                int direction = this.parseDirection(2);
+
+                if(direction != 0)
+                    command.set(CommandType.DRIVE_TURN, direction * 90);
+                else
+                    command.set(CommandType.MALFORMED);
+            }
+            else
+                this.parseAngle(command, CommandType.DRIVE_TURN);
+        }
+        else if(this.tokenEquals(1, "ROTATE"))
+            this.parseAngle(command, CommandType.DRIVE_ROTATE);
+        else
+            command.set(CommandType.UNKNOWN);
+    }
+
+    /**
+     * Parses "<direction> <angle>" from the third token on
+     */
+    private void parseAngle(Command command, CommandType type)
+    {
+        int direction = this.tokenCount == 4 ? this.parseDirection(2) : 0;
+
+        if(direction != 0 && this.parseInteger(3))
+            command.set(type, direction * this.parsedValue);
+        else
+            command.set(CommandType.MALFORMED);
+    }
+
+    /**
+     * Parses a single numeric argument, it has to be the last token
+     */
+    private void parseValue(Command command, CommandType type, int token)
+    {
+        if(this.tokenCount == token + 1 && this.parseInteger(token))
+            command.set(type, this.parsedValue);
+        else
+            command.set(CommandType.MALFORMED);
+    }
+
+    /**
+     * @return 1 for left, -1 for right, 0 if the token is no direction
+     */
+    private int parseDirection(int token)
+    {
+        if(this.tokenEquals(token, "L"))
+            return 1;
+        else if(this.tokenEquals(token, "R"))
+            return -1;
+        else
+            return 0;
+    }
+
+    /**
+     * Parses a decimal number and truncates it to an integer, the result is stored in parsedValue
+     * Plain numbers are parsed in place, other notations fall back to Double.parseDouble
+     * @return False if the token is not a number
+     */
+    private boolean parseInteger(int token)
+    {
+        int i = this.tokenStart[token];
+        int end = this.tokenEnd[token];
+        boolean negative = false;
+        long value = 0L;
+        int digits = 0;
+
+        char c = this.message.charAt(i);
+        if(c == '-' || c == '+')
+        {
+            negative = c == '-';
+            i++;
+        }
+
+        //Integer part
+        for(; i < end; i++)
+        {
+            c = this.message.charAt(i);
+
+            if(c < '0' || c > '9' || value > Integer.MAX_VALUE)
+                break;
+
+            value = value * 10 + (c - '0');
+            digits++;
+        }
+
+        //Fraction is truncated
+        if(i < end && this.message.charAt(i) == '.')
+        {
+            for(i++; i < end; i++)
+            {
+                c = this.message.charAt(i);
+
+                if(c < '0' || c > '9')
+                    break;
+
+                digits++;
+            }
+        }
+
+        if(i == end && digits > 0 && value <= Integer.MAX_VALUE)
+        {
+            this.parsedValue = (int) (negative ? -value : value);
+            return true;
+        }
+
+        return this.parseDouble(token);
+    }
+
+    /**
+     * Slow path for numbers like 1e3
+     */
+    private boolean parseDouble(int token)
+    {
+        try {
+            this.parsedValue = (int) Double.parseDouble(this.message.subSequence(this.tokenStart[token], this.tokenEnd[token]).toString());
+            return true;
+        }
+        catch(NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private boolean tokenEquals(int token, String keyword)
+    {
+        int start = this.tokenStart[token];
+        int length = keyword.length();
+
+        if(this.tokenEnd[token] - start != length)
+            return false;
+
+        for(int i = 0; i < length; i++)
+        {
+            if(this.message.charAt(start + i) != keyword.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds the tokens of the message, runs of spaces separate tokens
+     * Messages with more tokens than any command keep counting, so they are rejected as malformed
+     */
+    private void tokenize()
+    {
+        int length = this.message.length();
+        int i = 0;
+        this.tokenCount = 0;
+
+        while(i < length)
+        {
+            while(i < length && this.message.charAt(i) == ' ')
+                i++;
+
+            if(i == length)
+                break;
+
+            int start = i;
+
+            while(i < length && this.message.charAt(i) != ' ')
+                i++;
+
+            if(this.tokenCount < MAX_TOKENS)
+            {
+                this.tokenStart[this.tokenCount] = start;
+                this.tokenEnd[this.tokenCount] = i;
+            }
+
+            this.tokenCount++;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package be.uantwerpen.sc.tools.smartcar.commands;
+
+/**
+ * Commands of the car protocol
+ */
+public enum CommandType
+{
+    DRIVE_ABORT,
+    DRIVE_FLUSH,
+    /**
+     * Value: distance, without value the line is followed to the next node
+     */
+    DRIVE_FOLLOWLINE,
+    DRIVE_PAUSE,
+    DRIVE_RESUME,
+    /**
+     * Value: distance
+     */
+    DRIVE_FORWARD,
+    /**
+     * Value: distance
+     */
+    DRIVE_BACKWARDS,
+    /**
+     * Value: angle, positive to the left, negative to the right
+     */
+    DRIVE_TURN,
+    /**
+     * Value: angle, positive to the left, negative to the right
+     */
+    DRIVE_ROTATE,
+    DRIVE_DISTANCE,
+    TAG_READ_UID,
+    CAMERA,
+    LIFT,
+    SPEAKER,
+    SHUTDOWN,
+    HELP,
+    /**
+     * Known command with missing or invalid arguments
+     */
+    MALFORMED,
+    UNKNOWN
+}
@@ -1,5 +1,8 @@
 package be.uantwerpen.sc.tools.smartcar.handlers;
 
+import be.uantwerpen.sc.tools.clock.SimClock;
+import be.uantwerpen.sc.tools.clock.SimTimer;
+import be.uantwerpen.sc.tools.clock.WallClock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,6 +23,19 @@ public class DriveHandler
     private boolean driving;
     private Queue<Object> queue;
     private LocationHandler locationHandler;
+    private SimClock clock;
+
+    /**
+     * Simulation time of the last position update in ms
+     */
+    private long lastUpdateTime;
+
+    /**
+     * Timer for drive completion, null to detect completion by polling updatePosition()
+     */
+    private SimTimer timer;
+    private SimTimer.Timeout driveCompletion;
+    private Runnable drivingFinished;
 
     private static final float MMPD = 0.46f;    //mm per degree
     private static final float MMRD = 2f;       //mm per degree to rotate
@@ -37,14 +53,36 @@ public class DriveHandler
         this.queue = new LinkedBlockingQueue<>();
 
         this.locationHandler = null;
+        this.clock = new WallClock();
+        this.lastUpdateTime = 0L;
+        this.timer = null;
+        this.driveCompletion = null;
+        this.drivingFinished = null;
     }
 
-    public DriveHandler(float speed, LocationHandler locationHandler)
+    public DriveHandler(float speed, LocationHandler locationHandler, SimClock clock)
     {
         this();
 
         this.speed = speed;
         this.locationHandler = locationHandler;
+        this.clock = clock;
+    }
+
+    /**
+     * Schedules drive completion on a timer instead of polling for it
+     * The arrival time of a segment is known when it starts because the motion is linear
+     * @param timer Timer running on the simulation thread of the car
+     * @param drivingFinished Called when the target position is reached
+     */
+    public void setTimer(SimTimer timer, Runnable drivingFinished)
+    {
+        this.cancelCompletion();
+
+        this.timer = timer;
+        this.drivingFinished = drivingFinished;
+
+        this.scheduleCompletion();
     }
 
     public void newDriveDistanceCommand(float distance)
@@ -63,12 +101,23 @@ public class DriveHandler
      */
     public void setSpeed(float speed)
     {
+        this.foldPosition();
         this.speed = speed;
+        this.scheduleCompletion();
     }
 
     public void setPaused(boolean flag)
     {
+        if(this.paused == flag)
+            return;
+
+        this.foldPosition();
         this.paused = flag;
+
+        if(flag)
+            this.cancelCompletion();
+        else
+            this.scheduleCompletion();
     }
 
     public boolean isPaused()
@@ -78,12 +127,13 @@ public class DriveHandler
 
     public void abortDriving()
     {
+        this.cancelCompletion();
         this.driving = false;
     }
 
     public double getCurrentPosition()
     {
-        return this.currentPosition;
+        return this.projectPosition(this.clock.currentTimeMillis());
     }
 
     /**
@@ -92,7 +142,24 @@ public class DriveHandler
      */
     public double getTravelledDistance()
     {
-        return this.currentPosition * MMPD;   //Calculate position in mm
+        return this.getCurrentPosition() * MMPD;   //Calculate position in mm
+    }
+
+    /**
+     * Updates the position with the simulation time elapsed since the previous update
+     * Does nothing when completion is scheduled on a timer, the position is then derived from the clock when needed
+     * @return Returns true if target position is reached for the first time.
+     */
+    public boolean updatePosition()
+    {
+        if(this.timer != null)
+            return false;
+
+        long currentTime = this.clock.currentTimeMillis();
+        long elapsedTime = currentTime - this.lastUpdateTime;
+        this.lastUpdateTime = currentTime;
+
+        return this.updatePosition(elapsedTime);
     }
 
     /**
@@ -136,6 +203,14 @@ public class DriveHandler
         return false;
     }
 
+    /**
+     * @return Number of drive tasks waiting to be started
+     */
+    public int getQueueSize()
+    {
+        return this.queue.size();
+    }
+
     public void flushAllDriveTasks()
     {
         this.queue.clear();
@@ -146,6 +221,7 @@ public class DriveHandler
         if(!this.queue.isEmpty() && !this.driving)
         {
             this.currentPosition = 0.0f;
+            this.lastUpdateTime = this.clock.currentTimeMillis();
 
             Event driveCommand = (Event)this.queue.poll();
 
@@ -165,6 +241,7 @@ public class DriveHandler
                     return false; //Unknown command
 
                 this.driving = true;
+                this.scheduleCompletion();
                 return true;
             }
             else
@@ -173,4 +250,85 @@ public class DriveHandler
         else
             return false;
     }
+
+    /**
+     * Rotation speed of the wheels
+     * @return Degrees per ms
+     */
+    private double getRotationSpeed()
+    {
+        return (Math.abs(speed)/1000)/MMPD;
+    }
+
+    /**
+     * Calculates the wheel position at the given time without updating the state
+     * @param currentTime Simulation time in ms
+     * @return Position in degrees
+     */
+    private float projectPosition(long currentTime)
+    {
+        if(!this.driving || this.paused)
+            return this.currentPosition;
+
+        double rotation = this.getRotationSpeed() * (currentTime - this.lastUpdateTime);
+
+        if(this.targetPosition < 0)
+            rotation = -rotation;   //Drive backwards
+
+        if(Math.abs(this.currentPosition + rotation) >= Math.abs(this.targetPosition))
+            return this.targetPosition;
+
+        return (float)(this.currentPosition + rotation);
+    }
+
+    /**
+     * Stores the position reached so far, needed before the speed or pause state changes
+     */
+    private void foldPosition()
+    {
+        long currentTime = this.clock.currentTimeMillis();
+
+        this.currentPosition = this.projectPosition(currentTime);
+        this.lastUpdateTime = currentTime;
+    }
+
+    private void scheduleCompletion()
+    {
+        this.cancelCompletion();
+
+        if(this.timer == null || !this.driving || this.paused)
+            return;
+
+        double rotationSpeed = this.getRotationSpeed();
+
+        if(rotationSpeed <= 0)
+            return; //Standing still, target is never reached
+
+        double remaining = Math.max(Math.abs(this.targetPosition) - Math.abs(this.currentPosition), 0);
+        long deadline = this.lastUpdateTime + (long)Math.ceil(remaining / rotationSpeed);
+
+        this.driveCompletion = this.timer.schedule(deadline, this::completeDriving);
+    }
+
+    private void cancelCompletion()
+    {
+        if(this.driveCompletion != null)
+        {
+            this.driveCompletion.cancel();
+            this.driveCompletion = null;
+        }
+    }
+
+    private void completeDriving()
+    {
+        this.driveCompletion = null;
+        this.currentPosition = this.targetPosition;
+        this.lastUpdateTime = this.clock.currentTimeMillis();
+        this.driving = false;
+
+        logger.info("Target position reached");
+
+        if(this.drivingFinished != null)
+            this.drivingFinished.run();
+    }
 }
@@ -1,11 +1,16 @@
 package be.uantwerpen.sc.tools.smartcar.handlers;
 
-import be.uantwerpen.sc.services.sockets.SimSocket;
+import be.uantwerpen.sc.services.sockets.SimConnection;
+import be.uantwerpen.sc.services.sockets.SimLineCodec;
+import be.uantwerpen.sc.tools.clock.SimClock;
+import be.uantwerpen.sc.tools.clock.WallClock;
+import be.uantwerpen.sc.tools.jfr.SimFlightRecorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Thomas on 28/05/2016.
@@ -14,11 +19,68 @@ public class EventHandler
 {
     private static final Logger logger = LoggerFactory.getLogger(EventHandler.class);
 
+    /**
+     * Flush statistics over all cars
+     */
+    private static final AtomicLong totalFlushes = new AtomicLong();
+    private static final AtomicLong totalEvents = new AtomicLong();
+
     private Queue<Object> events;
 
+    /**
+     * Maximum number of events sent in one write
+     */
+    private int maxBatchSize;
+
+    /**
+     * Simulation time events may wait for more events before they are sent (in ms)
+     */
+    private long maxDelay;
+
+    /**
+     * Simulation time of the oldest event that is not sent yet (in ms)
+     */
+    private long pendingSince;
+    private SimClock clock;
+    private boolean waiting;
+
+    private long flushCount;
+    private long eventCount;
+    private int largestBatch;
+
+    /**
+     * ID of the simulated bot, used in the flight recorder events
+     */
+    private long botId;
+
     public EventHandler()
     {
         this.events = new LinkedBlockingQueue<>();
+        this.maxBatchSize = 64;
+        this.maxDelay = 0L;
+        this.waiting = false;
+        this.clock = new WallClock();
+    }
+
+    public EventHandler(SimClock clock)
+    {
+        this();
+        this.clock = clock;
+    }
+
+    /**
+     * @param maxBatchSize Maximum number of events sent in one write
+     * @param maxDelay Simulation time events may wait for more events before they are sent (in ms), 0 sends them every update
+     */
+    public void setBatching(int maxBatchSize, long maxDelay)
+    {
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        this.maxDelay = Math.max(maxDelay, 0L);
+    }
+
+    public void setBotId(long botId)
+    {
+        this.botId = botId;
     }
 
     public void addEvent(String event)
@@ -29,19 +91,129 @@ public class EventHandler
     public void flushEvents()
     {
         this.events.clear();
+        this.waiting = false;
     }
 
-    public void processEvents(SimSocket socket)
+    public void processEvents(SimConnection socket)
     {
-        while(!this.events.isEmpty())
+        int pending = this.events.size();
+
+        if(pending > 0)
         {
-            String event = (String)this.events.poll();
+            long now = this.clock.currentTimeMillis();
+
+            if(!this.waiting)
+            {
+                this.pendingSince = now;
+                this.waiting = true;
+            }
 
-            boolean success =  socket.sendMessage(event + "\r\n");
-            if(!success) logger.error("Error while sending event! "+event);
+            //Coalesce the events until the batch is full or the oldest event waited long enough
+            if(pending >= this.maxBatchSize || now - this.pendingSince >= this.maxDelay)
+            {
+                this.sendEvents(socket);
+                this.waiting = false;
+            }
         }
 
         //Read socket to verify if its still alive
-        socket.getMessage();
+        socket.getLine();
+    }
+
+    /**
+     * @return Number of writes used to send events
+     */
+    public long getFlushCount()
+    {
+        return this.flushCount;
+    }
+
+    /**
+     * @return Number of events sent
+     */
+    public long getEventCount()
+    {
+        return this.eventCount;
+    }
+
+    /**
+     * @return Largest number of events sent in one write
+     */
+    public int getLargestBatch()
+    {
+        return this.largestBatch;
+    }
+
+    /**
+     * @return Number of events waiting to be sent
+     */
+    public int getQueueSize()
+    {
+        return this.events.size();
+    }
+
+    /**
+     * @return Average number of events per write of this car
+     */
+    public double getEventsPerFlush()
+    {
+        return this.flushCount > 0 ? (double) this.eventCount / this.flushCount : 0.0;
+    }
+
+    /**
+     * @return Number of writes used to send events over all cars
+     */
+    public static long getTotalFlushCount()
+    {
+        return totalFlushes.get();
+    }
+
+    /**
+     * @return Number of events sent over all cars
+     */
+    public static long getTotalEventCount()
+    {
+        return totalEvents.get();
+    }
+
+    /**
+     * @return Average number of events per write over all cars
+     */
+    public static double getTotalEventsPerFlush()
+    {
+        long flushes = totalFlushes.get();
+
+        return flushes > 0 ? (double) totalEvents.get() / flushes : 0.0;
+    }
+
+    /**
+     * Sends all queued events, at most maxBatchSize per write
+     */
+    private void sendEvents(SimConnection socket)
+    {
+        while(!this.events.isEmpty())
+        {
+            int batch = 0;
+            long start = System.nanoTime();
+            Object event;
+
+            while(batch < this.maxBatchSize && (event = this.events.poll()) != null)
+            {
+                socket.appendMessage((String) event, SimLineCodec.Ending.LINE);
+                batch++;
+            }
+
+            boolean success = socket.flushMessages();
+            if(!success) logger.error("Error while sending " + batch + " events!");
+
+            this.flushCount++;
+            this.eventCount += batch;
+            this.largestBatch = Math.max(this.largestBatch, batch);
+
+            totalFlushes.incrementAndGet();
+            totalEvents.addAndGet(batch);
+
+            SimFlightRecorder.eventFlush(this.botId, batch, System.nanoTime() - start);
+        }
     }
 }
@@ -34,6 +34,12 @@ public class LocationHandler
     private MapService mapService;
 
     public LocationHandler()
+    {
+        //Get values from spring
+        this(getMapServiceBean());
+    }
+
+    public LocationHandler(MapService mapService)
     {
         this.currentLocation = null;
         this.destinationLocation = 0L;
@@ -41,9 +47,7 @@ public class LocationHandler
         prevCommandBuffer = new ArrayList<>();
         rollbackLocation = null;
 
-        //Get values from spring
-        ApplicationContext context =  SpringContext.getAppContext();
-        this.mapService = context.getBean(MapService.class);
+        this.mapService = mapService;
     }
 
     /**
@@ -248,6 +252,12 @@ public class LocationHandler
         this.followline = false;
     }
 
+    private static MapService getMapServiceBean()
+    {
+        ApplicationContext context =  SpringContext.getAppContext();
+        return context.getBean(MapService.class);
+    }
+
     // search point by id
     private Point findPointById(long id) {
         Point node =findNodeByPointId(id);
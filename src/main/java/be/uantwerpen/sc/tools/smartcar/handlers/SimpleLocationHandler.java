@@ -1,5 +1,7 @@
 package be.uantwerpen.sc.tools.smartcar.handlers;
 
+import be.uantwerpen.sc.services.mapService.MapService;
+
 /**
  * Deze klasse overschijft de problematische methods van de echte LocationHandler en voorziet dummy-data
  * Dit levert een betere simulatie op dan wanneer de LocationHandler in de war geraakt.
@@ -15,6 +17,11 @@ public class SimpleLocationHandler extends LocationHandler {
         logger.warn("Using simple location handler. Location data will be inaccurate");
     }
 
+    public SimpleLocationHandler(MapService mapService) {
+        super(mapService);
+        logger.warn("Using simple location handler. Location data will be inaccurate");
+    }
+
     public void startFollowLine() {
         this.destinationDistance = 300; // we assume the length of 1 tile
         this.driving = true;
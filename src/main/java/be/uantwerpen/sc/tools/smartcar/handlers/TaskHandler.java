@@ -1,9 +1,19 @@
 package be.uantwerpen.sc.tools.smartcar.handlers;
 
-import be.uantwerpen.sc.services.sockets.SimSocket;
+import be.uantwerpen.sc.services.sockets.SimConnection;
+import be.uantwerpen.sc.services.sockets.SimLineCodec;
+import be.uantwerpen.sc.tools.jfr.SimFlightRecorder;
+import be.uantwerpen.sc.tools.smartcar.commands.Command;
+import be.uantwerpen.sc.tools.smartcar.commands.CommandParser;
+import be.uantwerpen.sc.tools.smartcar.commands.CommandType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 /**
  * Created by Thomas on 28/05/2016.
  */
@@ -11,11 +21,43 @@ public class TaskHandler
 {
     private static final Logger logger = LoggerFactory.getLogger(TaskHandler.class);
 
+    /**
+     * Received commands of all cars per type
+     */
+    private static final Map<CommandType, Counter> commandCounters = new EnumMap<>(CommandType.class);
+
+    static
+    {
+        for(CommandType type : CommandType.values())
+        {
+            commandCounters.put(type, Counter.builder("sim.car.commands")
+                    .tag("type", type.name().toLowerCase())
+                    .description("Task commands received from the cores")
+                    .register(Metrics.globalRegistry));
+        }
+    }
+
     private DriveHandler driveHandler;
     private EventHandler eventHandler;
     private LocationHandler locationHandler;
     private TagReaderHandler tagReaderHandler;
 
+    /**
+     * Maximum number of commands processed per update
+     */
+    private int commandBudget;
+
+    /**
+     * ID of the simulated bot, used in the flight recorder events
+     */
+    private long botId;
+
+    /**
+     * Parser and command reused for every message
+     */
+    private final CommandParser parser = new CommandParser();
+    private final Command command = new Command();
+
     private TaskHandler()
     {
         this.driveHandler = null;
@@ -30,57 +72,148 @@ public class TaskHandler
         this.eventHandler = eventHandler;
         this.locationHandler = locationHandler;
         this.tagReaderHandler = tagReaderHandler;
+        this.commandBudget = 1;
     }
 
     /**
-     * Processes message received from the socket into a valid command
-     * @param socket Socket to receive message on
+     * @param commandBudget Maximum number of commands processed per update, 1 processes one command per tick
+     */
+    public void setCommandBudget(int commandBudget)
+    {
+        this.commandBudget = Math.max(commandBudget, 1);
+    }
+
+    public void setBotId(long botId)
+    {
+        this.botId = botId;
+    }
+
+    /**
+     * Processes the commands received on the socket, at most the command budget
+     * Responses are sent together in one write
+     * @param socket Socket to receive messages on
+     * @return Number of received messages
      */
-    public void processMessage(SimSocket socket)
+    public int processMessages(SimConnection socket)
     {
-        String message = socket.getMessage();
-        String response = "NACK";
+        int processed = 0;
+        CharSequence message;
 
-        if(message == null) {
-            return; //No task to process
-        }
+        while(processed < this.commandBudget && (message = socket.getLine()) != null)
+        {
+            processed++;
+
+            if(message.length() <= 0) {
+                continue; //Empty message
+            }
 
-        if(message.length() <= 0) {
-            return; //Empty message
+            socket.appendMessage(processMessage(message), SimLineCodec.Ending.PROMPT);
         }
 
-        logger.trace("Task received: "+message);
+        //Send responses
+        if(processed > 0)
+            socket.flushMessages();
+
+        return processed;
+    }
+
+    /**
+     * Processes message received from the socket into a valid command
+     * @param message Received message
+     * @return Response to the command
+     */
+    private String processMessage(CharSequence message)
+    {
+        String response;
+        long start = System.nanoTime();
+
+        logger.trace("Task received: {}", message);
 
-        String task = message.split(" ")[0].trim();
+        Command command = this.parser.parse(message, this.command);
+        commandCounters.get(command.getType()).increment();
 
-        switch(task)
+        switch(command.getType())
         {
-            case "DRIVE":
-                response = processDriveCommand(message);
+            case DRIVE_ABORT:
+                logger.info("Drive command aborted");
+                driveHandler.flushAllDriveTasks();
+                driveHandler.abortDriving();
+                response = "NACK";
                 break;
-            case "CAMERA":
-                //Not implemented in simulation
+            case DRIVE_FLUSH:
+                driveHandler.flushAllDriveTasks();
                 response = "NACK";
                 break;
-            case "TAG":
-                response = processTagCommand(message);
+            case DRIVE_FOLLOWLINE:
+                logger.info("Follow line command received");
+                if(!command.hasValue())
+                {
+                    //Follow line until end of line
+                    locationHandler.startFollowLine();
+                    driveHandler.newDriveDistanceCommand(locationHandler.getDistanceTargetLocation());
+                }
+                else
+                {
+                    //Follow line for distance
+                    driveHandler.newDriveDistanceCommand(command.getValue());
+                }
+                response = "ACK";
                 break;
-            case "LIFT":
-                //Not implemented in simulation
-                response = "NACK";
+            case DRIVE_PAUSE:
+                logger.info("Pausing drive command");
+                driveHandler.setPaused(true);
+                response = "ACK";
                 break;
-            case "SPEAKER":
-                //Not available in simulation
+            case DRIVE_RESUME:
+                logger.info("Resuming drive command");
+                driveHandler.setPaused(false);
+                response = "ACK";
+                break;
+            case DRIVE_FORWARD:
+                logger.info("Drive forward received");
+                driveHandler.newDriveDistanceCommand(command.getValue());
+                response = "ACK";
+                break;
+            case DRIVE_BACKWARDS:
+                logger.info("Drive backwards received");
+                driveHandler.newDriveDistanceCommand(-command.getValue());
+                response = "ACK";
+                break;
+            case DRIVE_TURN:
+                logger.info("Drive turn command received");
+                driveHandler.newTurnAngleCommand(command.getValue());
+                response = "ACK";
+                break;
+            case DRIVE_ROTATE:
+                logger.info("Drive ROTATE received");
+                driveHandler.newTurnAngleCommand(command.getValue());
+                response = "ACK";
+                break;
+            case DRIVE_DISTANCE:
+                logger.trace("Receive drive distance polling command");
+                eventHandler.addEvent("TRAVEL DISTANCE EVENT: " + (int)driveHandler.getTravelledDistance());
+                response = "ACK";
+                break;
+            case TAG_READ_UID:
+                this.eventHandler.addEvent(this.tagReaderHandler.readTag());
+                response = "ACK";
+                break;
+            case CAMERA:
+            case LIFT:
+                //Not implemented in simulation
                 response = "NACK";
                 break;
-            case "SHUTDOWN":
+            case SPEAKER:
+            case SHUTDOWN:
                 //Not available in simulation
                 response = "NACK";
                 break;
-            case "HELP":
-            case "?":
+            case HELP:
                 response = processHelpCommand();
                 break;
+            case MALFORMED:
+                response = "MALFORMED COMMAND";
+                break;
             default:
                 response = "UNKNOWN COMMAND";
                 break;
@@ -91,226 +224,11 @@ public class TaskHandler
             logger.warn("Response to command "+message+" is "+response);
         }
 
-        //Send response
-        socket.sendMessage(response + "\r\n# ");
-    }
-
-    /**
-     * Processes given drive command
-     * @param command Command to parse
-     * @return "ACK" on success or "NACK" on failure
-     */
-    private String processDriveCommand(String command)
-    {
-        String response = "NACK";
-
-        if(command.startsWith("DRIVE ABORT"))
-        {
-            logger.info("Drive command aborted");
-            driveHandler.flushAllDriveTasks();
-            driveHandler.abortDriving();
-        }
-        else if(command.startsWith("DRIVE FLUSH"))
-        {
-            driveHandler.flushAllDriveTasks();
-        }
-        else if(command.startsWith("DRIVE FOLLOWLINE"))
-        {
-            logger.info("Follow line command received");
-            if(command.split(" ", 3).length == 2)
-            {
-                //Follow line until end of line
-                locationHandler.startFollowLine();
-                int distance = locationHandler.getDistanceTargetLocation();
-                driveHandler.newDriveDistanceCommand(distance);
-                return "ACK";
-            }
-            else
-            {
-                //Follow line for distance
-                try {
-                    int distance = parseInteger(command.split(" ", 3)[2]);
-                    driveHandler.newDriveDistanceCommand(distance);
-                    response = "ACK";
-                }
-                catch(Exception e) {
-                    //Could not parse distance from command
-                    response = "MALFORMED COMMAND";
-                }
-            }
-        }
-        else if(command.startsWith("DRIVE PAUSE"))
-        {
-            logger.info("Pausing drive command");
-            driveHandler.setPaused(true);
-
-            response = "ACK";
-        }
-        else if(command.startsWith("DRIVE RESUME"))
-        {
-            logger.info("Resuming drive command");
-            driveHandler.setPaused(false);
-
-            response = "ACK";
-        }
-        else if(command.startsWith("DRIVE FORWARD"))
-        {
-            logger.info("Drive forward received");
-            try {
-                int distance = parseInteger(command.split(" ", 3)[2]);
-                driveHandler.newDriveDistanceCommand(distance);
-                response = "ACK";
-            }
-            catch(Exception e) {
-                //Could not parse distance from command
-                response = "MALFORMED COMMAND";
-            }
-        }
-        else if(command.startsWith("DRIVE BACKWARDS"))
-        {
-            logger.info("Drive backwards received");
-            try {
-                int distance = parseInteger(command.split(" ", 3)[2]);
-                driveHandler.newDriveDistanceCommand(-distance);
-                response = "ACK";
-            }
-            catch(Exception e) {
-                //Could not parse distance from command
-                response = "MALFORMED COMMAND";
-            }
-        }
-        else if(command.startsWith("DRIVE TURN"))
-        {
-            logger.info("Drive turn command received");
-            if(command.split(" ").length == 3)
-            {
-                if(command.split(" ")[2].equals("L"))
-                {
-                    driveHandler.newTurnAngleCommand(90);
-
-                    response = "ACK";
-                }
-                else if(command.split(" ")[2].equals("R"))
-                {
-                    driveHandler.newTurnAngleCommand(-90);
-
-                    response = "ACK";
-                }
-                else {
-                    response = "MALFORMED COMMAND";
-                }
-            }
-            else if(command.split(" ").length == 4)
-            {
-                if(command.split(" ")[2].equals("L"))
-                {
-                    try {
-                        int angle = parseInteger(command.split(" ")[3]);
-                        driveHandler.newTurnAngleCommand(angle);
-                        response = "ACK";
-                    }
-                    catch(Exception e) {
-                        //Could not parse distance from command
-                        response = "MALFORMED COMMAND";
-                    }
-                }
-                else if(command.split(" ")[2].equals("R"))
-                {
-                    try {
-                        int angle = parseInteger(command.split(" ")[3]);
-                        driveHandler.newTurnAngleCommand(-angle);
-                        response = "ACK";
-                    }
-                    catch(Exception e) {
-                        //Could not parse distance from command
-                        response = "MALFORMED COMMAND";
-                    }
-                }
-                else
-                {
-                    response = "MALFORMED COMMAND";
-                }
-            }
-            else
-            {
-                response = "MALFORMED COMMAND";
-            }
-        }
-        else if(command.startsWith("DRIVE ROTATE"))
-        {
-            logger.info("Drive ROTATE received");
-            if(command.split(" ").length == 4)
-            {
-                if(command.split(" ")[2].equals("L"))
-                {
-                    try
-                    {
-                        int angle = parseInteger(command.split(" ")[3]);
-
-                        driveHandler.newTurnAngleCommand(angle);
-
-                        response = "ACK";
-                    }
-                    catch(Exception e)
-                    {
-                        //Could not parse distance from command
-                        response = "MALFORMED COMMAND";
-                    }
-                }
-                else if(command.split(" ")[2].equals("R"))
-                {
-                    try
-                    {
-                        int angle = parseInteger(command.split(" ")[3]);
-
-                        driveHandler.newTurnAngleCommand(-angle);
-
-                        response = "ACK";
-                    }
-                    catch(Exception e)
-                    {
-                        //Could not parse distance from command
-                        response = "MALFORMED COMMAND";
-                    }
-                }
-                else
-                {
-                    response = "MALFORMED COMMAND";
-                }
-            }
-            else
-            {
-                response = "MALFORMED COMMAND";
-            }
-        }
-        else if(command.startsWith("DRIVE DISTANCE"))
-        {
-            logger.trace("Receive drive distance polling command");
-            eventHandler.addEvent("TRAVEL DISTANCE EVENT: " + (int)driveHandler.getTravelledDistance());
-
-            response = "ACK";
-        }
-        else {
-            response = "UNKNOWN COMMAND";
-        }
+        SimFlightRecorder.command(this.botId, command.getType().name(), response, System.nanoTime() - start);
 
         return response;
     }
 
-    private String processTagCommand(String command)
-    {
-        if(command.equals("TAG READ UID"))
-        {
-            this.eventHandler.addEvent(this.tagReaderHandler.readTag());
-
-            return "ACK";
-        }
-        else
-        {
-            return "UNKNOWN COMMAND";
-        }
-    }
-
     /**
      * Returns help string containing commands
      * @return String containingg available commands
@@ -319,22 +237,4 @@ public class TaskHandler
     {
         return "KNOWN COMMANDS IN SIMULATION: DRIVE [ABORT, FLUSH, FOLLOWLINE, PAUSE, RESUME, FORWARD, BACKWARDS, TURN, ROTATE, DISTANCE], TAG [READ UID], HELP";
     }
-
-    /**
-     * Integer parsing with exception throwing
-     * @param value String to parse
-     * @return Integer value
-     * @throws Exception
-     */
-    private int parseInteger(String value) throws Exception
-    {
-        int parsedInt;
-        try {
-            parsedInt = (int) Double.parseDouble(value); //allow double values but truncate to int
-        }
-        catch(NumberFormatException e) {
-            throw new Exception("'" + value + "' is not an integer value!");
-        }
-        return parsedInt;
-    }
 }
@@ -0,0 +1,325 @@
+package be.uantwerpen.sc;
+
+import be.uantwerpen.sc.models.sim.SimCar;
+import be.uantwerpen.sc.models.sim.SimTickable;
+import be.uantwerpen.sc.models.sim.deployer.Log;
+import be.uantwerpen.sc.services.SimFactory;
+import be.uantwerpen.sc.services.SimSchedulerService;
+import be.uantwerpen.sc.tools.fakecore.FakeCore;
+import be.uantwerpen.sc.tools.fakecore.LatencyHistogram;
+import be.uantwerpen.sc.tools.metrics.TickMetrics;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+// TIP change working dir field to empty in run configuration
+// Remove @Ignore annotation to run this, add before building with maven
+// Ramp with -Dfleet.steps=10,100,1000 -Dfleet.warmup=5000 -Dfleet.window=10000 (ms)
+
+/**
+ * Ramps up a fleet of cars with fake cores against the mocked map and measures
+ * tick jitter, CPU, heap, RSS, threads and file descriptors for every fleet size
+ * The report shows from which fleet size the simulator can no longer keep up with its ticks
+ */
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("mocks")
+@SpringApplicationConfiguration(classes = SimCityApplication.class)
+@TestPropertySource(properties = "sim.core.fake=true")
+@Ignore
+public class SimFleetBenchmarkTest {
+
+    private static final String REPORT_FILE = "target/fleet-report.csv";
+
+    @Autowired
+    SimFactory factory;
+
+    @Autowired
+    SimSchedulerService scheduler;
+
+    @Test
+    public void rampFleet() throws Exception {
+        // fix problem ith strange logger implementation
+        new Log(this.getClass(), Level.WARNING);
+
+        long warmup = Long.getLong("fleet.warmup", 5000L);
+        long window = Long.getLong("fleet.window", 10000L);
+        List<Integer> steps = new ArrayList<>();
+
+        for(String step : System.getProperty("fleet.steps", "10,50,100,250,500,1000").split(","))
+            steps.add(Integer.parseInt(step.trim()));
+
+        //One probe per tick worker, registered first so each worker gets one
+        List<JitterProbe> probes = new ArrayList<>();
+
+        for(int i = 0; i < scheduler.getWorkerCount(); i++) {
+            JitterProbe probe = new JitterProbe(scheduler.getClock().toRealNanos(scheduler.getTickPeriod()));
+            probes.add(probe);
+            scheduler.register(probe);
+        }
+
+        Thread.sleep(1000); // wait for application load
+        System.gc();
+        FleetSample baseline = FleetSample.measure(0, 0L, 0L, 0L, new LatencyHistogram());
+
+        List<SimCar> cars = new ArrayList<>();
+        List<FleetSample> samples = new ArrayList<>();
+
+        for(int size : steps) {
+            while(cars.size() < size) {
+                SimCar car = factory.createSimCar(cars.size() + 1);
+                car.setStartPoint(10);
+                car.start();
+                cars.add(car);
+            }
+
+            Thread.sleep(warmup);
+
+            for(JitterProbe probe : probes)
+                probe.reset();
+
+            long overruns = scheduler.getOverrunCount();
+            long cpuTime = processCpuTime();
+            long start = System.nanoTime();
+
+            Thread.sleep(window);
+
+            LatencyHistogram jitter = new LatencyHistogram();
+            for(JitterProbe probe : probes)
+                jitter.add(probe.getJitter());
+
+            System.gc();
+            FleetSample sample = FleetSample.measure(size, System.nanoTime() - start, processCpuTime() - cpuTime, scheduler.getOverrunCount() - overruns, jitter);
+            samples.add(sample);
+
+            System.out.println("Fleet of " + size + " cars: " + sample.describe(baseline));
+        }
+
+        for(JitterProbe probe : probes)
+            probe.stop();
+
+        for(SimCar car : cars)
+            car.stop();
+
+        for(SimCar car : cars)
+            car.awaitTermination(30, TimeUnit.SECONDS);
+
+        report(baseline, samples);
+        System.out.println("Fake core ack latency: " + FakeCore.getTotalAckLatency());
+        System.out.println("Fake core event latency: " + FakeCore.getTotalEventLatency());
+
+        for(TickMetrics.Timer timer : TickMetrics.Timer.values())
+            System.out.println("Car " + timer + ": " + TickMetrics.describe(TickMetrics.getGlobalHistogram(timer)));
+
+        System.out.println("Car tick overruns: " + TickMetrics.getGlobalOverrunCount() + " of " + TickMetrics.getGlobalTickCount() + " ticks");
+    }
+
+    /**
+     * Prints the report and writes it as CSV
+     */
+    private void report(FleetSample baseline, List<FleetSample> samples) throws IOException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        FleetSample saturation = null;
+        String reason = null;
+
+        for(FleetSample sample : samples) {
+            reason = sample.saturation(scheduler.getTickPeriod(), cores);
+
+            if(reason != null) {
+                saturation = sample;
+                break;
+            }
+        }
+
+        System.out.println("Fleet report (" + scheduler.getWorkerCount() + " tick workers, " + cores + " cores, tick of " + scheduler.getTickPeriod() + " ms)");
+        System.out.println(FleetSample.HEADER);
+
+        for(FleetSample sample : samples)
+            System.out.println(sample.toCsv(baseline));
+
+        if(saturation != null)
+            System.out.println("Saturated at " + saturation.cars + " cars: " + reason);
+        else
+            System.out.println("Not saturated up to " + samples.get(samples.size() - 1).cars + " cars");
+
+        File file = new File(REPORT_FILE);
+        if(file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+
+        try(PrintWriter writer = new PrintWriter(file)) {
+            writer.println(FleetSample.HEADER);
+
+            for(FleetSample sample : samples)
+                writer.println(sample.toCsv(baseline));
+        }
+    }
+
+    private static long processCpuTime() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+        if(os instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+
+        return -1L;
+    }
+
+    /**
+     * Ticked like a car, records how late every tick starts
+     */
+    private static class JitterProbe implements SimTickable {
+        private final long periodNanos;
+        private volatile LatencyHistogram jitter = new LatencyHistogram();
+        private volatile boolean running = true;
+        private long lastTick = 0L;
+
+        private JitterProbe(long periodNanos) {
+            this.periodNanos = periodNanos;
+        }
+
+        @Override
+        public boolean tick() {
+            long now = System.nanoTime();
+
+            if(lastTick != 0L)
+                jitter.record(Math.abs(now - lastTick - periodNanos));
+
+            lastTick = now;
+            return running;
+        }
+
+        @Override
+        public void unscheduled() {
+        }
+
+        private void reset() {
+            jitter = new LatencyHistogram();
+        }
+
+        private LatencyHistogram getJitter() {
+            return jitter;
+        }
+
+        private void stop() {
+            running = false;
+        }
+    }
+
+    /**
+     * Resource usage of the simulator for one fleet size
+     */
+    private static class FleetSample {
+        private static final String HEADER = "cars,jitter_p50_us,jitter_p99_us,jitter_p999_us,jitter_max_us,overruns,cpu_cores,cpu_ms_per_car_s,heap_mb,heap_kb_per_car,rss_mb,rss_kb_per_car,threads,fds";
+
+        private int cars;
+        private long windowNanos;
+        private long cpuNanos;
+        private long overruns;
+        private LatencyHistogram jitter;
+        private long heap;
+        private long rss;
+        private int threads;
+        private long fds;
+
+        private static FleetSample measure(int cars, long windowNanos, long cpuNanos, long overruns, LatencyHistogram jitter) {
+            FleetSample sample = new FleetSample();
+            sample.cars = cars;
+            sample.windowNanos = windowNanos;
+            sample.cpuNanos = cpuNanos;
+            sample.overruns = overruns;
+            sample.jitter = jitter;
+            sample.heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            sample.rss = residentSetSize();
+            sample.threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            sample.fds = openFileDescriptors();
+
+            return sample;
+        }
+
+        /**
+         * @return Average number of cores busy during the window
+         */
+        private double cpuCores() {
+            return windowNanos > 0 ? (double) cpuNanos / windowNanos : 0.0;
+        }
+
+        /**
+         * @return Reason the simulator is saturated, null if it keeps up
+         */
+        private String saturation(long tickPeriod, int cores) {
+            if(jitter.getPercentile(99.0) > TimeUnit.MILLISECONDS.toMicros(tickPeriod) / 2)
+                return "p99 tick jitter " + jitter.getPercentile(99.0) + " us exceeds half the tick period";
+
+            if(overruns > 0)
+                return overruns + " ticks overran the tick period";
+
+            if(cpuCores() > cores * 0.9)
+                return String.format("CPU at %.1f of %d cores", cpuCores(), cores);
+
+            return null;
+        }
+
+        private String describe(FleetSample baseline) {
+            return "tick jitter [" + jitter + "], overruns " + overruns + String.format(", CPU %.2f cores", cpuCores())
+                    + ", heap " + (heap >> 20) + " MB, RSS " + (rss >> 20) + " MB, " + threads + " threads, " + fds + " fds"
+                    + " (" + perCar(heap - baseline.heap) + " kB heap, " + perCar(rss - baseline.rss) + " kB RSS per car)";
+        }
+
+        private String toCsv(FleetSample baseline) {
+            double cpuPerCar = cars > 0 && windowNanos > 0 ? cpuNanos / 1e6 / cars / (windowNanos / 1e9) : 0.0;
+
+            return cars + "," + jitter.getPercentile(50.0) + "," + jitter.getPercentile(99.0) + "," + jitter.getPercentile(99.9) + "," + jitter.getMax()
+                    + "," + overruns + String.format(",%.2f,%.3f,", cpuCores(), cpuPerCar)
+                    + (heap >> 20) + "," + perCar(heap - baseline.heap) + "," + (rss >> 20) + "," + perCar(rss - baseline.rss)
+                    + "," + threads + "," + fds;
+        }
+
+        private long perCar(long bytes) {
+            return cars > 0 ? (bytes >> 10) / cars : 0L;
+        }
+
+        /**
+         * @return Resident set size of the JVM process in bytes, -1 when not on Linux
+         */
+        private static long residentSetSize() {
+            try(BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+                String line;
+
+                while((line = reader.readLine()) != null) {
+                    if(line.startsWith("VmRSS:"))
+                        return Long.parseLong(line.replaceAll("[^0-9]", "")) << 10;
+                }
+            }
+            catch(IOException | NumberFormatException e) {
+                //Not available on this platform
+            }
+
+            return -1L;
+        }
+
+        private static long openFileDescriptors() {
+            OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+            if(os instanceof com.sun.management.UnixOperatingSystemMXBean)
+                return ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+
+            return -1L;
+        }
+    }
+}
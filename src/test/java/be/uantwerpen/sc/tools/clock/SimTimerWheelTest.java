@@ -0,0 +1,91 @@
+package be.uantwerpen.sc.tools.clock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies timer ordering, cancellation and large time jumps of the timer wheel
+ */
+public class SimTimerWheelTest
+{
+    @Test
+    public void tasksRunAtTheirDeadline()
+    {
+        SimTimerWheel wheel = new SimTimerWheel(1000, 1, 8);
+        List<Long> fired = new ArrayList<>();
+
+        wheel.schedule(1005, () -> fired.add(5L));
+        wheel.schedule(1020, () -> fired.add(20L)); //Beyond one rotation
+
+        assertEquals(1005, wheel.nextFireTime());
+
+        wheel.advance(1004);
+        assertTrue(fired.isEmpty());
+
+        wheel.advance(1005);
+        assertEquals(1, fired.size());
+
+        wheel.advance(1019);
+        assertEquals(1, fired.size());
+
+        wheel.advance(1020);
+        assertEquals(2, fired.size());
+        assertEquals(0, wheel.size());
+        assertEquals(Long.MAX_VALUE, wheel.nextFireTime());
+    }
+
+    @Test
+    public void cancelledTasksDoNotRun()
+    {
+        SimTimerWheel wheel = new SimTimerWheel(0, 1, 8);
+        List<Long> fired = new ArrayList<>();
+
+        SimTimer.Timeout timeout = wheel.schedule(3, () -> fired.add(3L));
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+
+        wheel.advance(10);
+        assertTrue(fired.isEmpty());
+    }
+
+    @Test
+    public void jumpOverSeveralRotationsRunsAllExpiredTasks()
+    {
+        SimTimerWheel wheel = new SimTimerWheel(0, 10, 4);
+        List<Long> fired = new ArrayList<>();
+
+        for(long deadline = 5; deadline < 200; deadline += 15)
+        {
+            long value = deadline;
+            wheel.schedule(deadline, () -> fired.add(value));
+        }
+
+        wheel.schedule(500, () -> fired.add(500L));
+
+        wheel.advance(200);
+        assertEquals(13, fired.size());
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void expiredDeadlinesRunOnNextAdvance()
+    {
+        SimTimerWheel wheel = new SimTimerWheel(100, 1, 8);
+        List<Long> fired = new ArrayList<>();
+
+        wheel.schedule(50, () -> wheel.schedule(50, () -> fired.add(2L)));
+
+        wheel.advance(101);
+        assertTrue(fired.isEmpty());
+
+        wheel.advance(102);
+        assertEquals(1, fired.size());
+    }
+}
@@ -0,0 +1,57 @@
+package be.uantwerpen.sc.tools.smartcar.commands;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the command parser against the responses of the original string based parsing
+ */
+public class CommandParserTest
+{
+    private final CommandParser parser = new CommandParser();
+    private final Command command = new Command();
+
+    @Test
+    public void parsesDriveCommands()
+    {
+        assertCommand("DRIVE FORWARD 120", CommandType.DRIVE_FORWARD, 120);
+        assertCommand("DRIVE BACKWARDS 30.9", CommandType.DRIVE_BACKWARDS, 30);
+        assertCommand("DRIVE TURN L", CommandType.DRIVE_TURN, 90);
+        assertCommand("DRIVE TURN R 45", CommandType.DRIVE_TURN, -45);
+        assertCommand("DRIVE ROTATE L 180", CommandType.DRIVE_ROTATE, 180);
+        assertCommand("DRIVE FOLLOWLINE 1e2", CommandType.DRIVE_FOLLOWLINE, 100);
+
+        parser.parse("DRIVE FOLLOWLINE", command);
+        assertEquals(CommandType.DRIVE_FOLLOWLINE, command.getType());
+        assertFalse(command.hasValue());
+
+        assertEquals(CommandType.DRIVE_DISTANCE, parser.parse("DRIVE DISTANCE", command).getType());
+        assertEquals(CommandType.TAG_READ_UID, parser.parse("TAG READ UID", command).getType());
+        assertEquals(CommandType.HELP, parser.parse("?", command).getType());
+    }
+
+    @Test
+    public void rejectsInvalidCommands()
+    {
+        assertEquals(CommandType.MALFORMED, parser.parse("DRIVE FORWARD", command).getType());
+        assertEquals(CommandType.MALFORMED, parser.parse("DRIVE FORWARD ten", command).getType());
+        assertEquals(CommandType.MALFORMED, parser.parse("DRIVE TURN X", command).getType());
+        assertEquals(CommandType.MALFORMED, parser.parse("DRIVE ROTATE L", command).getType());
+        assertEquals(CommandType.MALFORMED, parser.parse("DRIVE TURN L 90 5", command).getType());
+        assertEquals(CommandType.UNKNOWN, parser.parse("DRIVE JUMP", command).getType());
+        assertEquals(CommandType.UNKNOWN, parser.parse("TAG READ", command).getType());
+        assertEquals(CommandType.UNKNOWN, parser.parse("", command).getType());
+    }
+
+    private void assertCommand(String message, CommandType type, int value)
+    {
+        parser.parse(message, command);
+
+        assertEquals(type, command.getType());
+        assertTrue(command.hasValue());
+        assertEquals(value, command.getValue());
+    }
+}
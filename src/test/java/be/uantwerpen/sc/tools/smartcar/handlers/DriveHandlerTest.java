@@ -0,0 +1,63 @@
+package be.uantwerpen.sc.tools.smartcar.handlers;
+
+import be.uantwerpen.sc.tools.clock.SimTimerWheel;
+import be.uantwerpen.sc.tools.clock.SteppedClock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies drive completion on the timer wheel, also when the car is stopped while driving
+ */
+public class DriveHandlerTest
+{
+    private SteppedClock clock;
+    private SimTimerWheel wheel;
+    private DriveHandler driveHandler;
+    private AtomicInteger finished;
+
+    @Before
+    public void setup() {
+        this.clock = new SteppedClock(0);
+        this.wheel = new SimTimerWheel(0, 1, 512);
+        this.driveHandler = new DriveHandler(70, new SimpleLocationHandler(null), this.clock);
+        this.finished = new AtomicInteger();
+
+        this.driveHandler.setTimer(this.wheel, this.finished::incrementAndGet);
+    }
+
+    @Test
+    public void completionRunsWhenTheTargetIsReached() {
+        this.driveHandler.newDriveDistanceCommand(100);
+        assertTrue(this.driveHandler.startNextDriveTask());
+
+        this.advance(10000);
+
+        assertEquals(1, this.finished.get());
+        assertEquals(0, this.wheel.size());
+    }
+
+    @Test
+    public void stoppedCarNeverRunsItsCompletion() {
+        this.driveHandler.newDriveDistanceCommand(100);
+        assertTrue(this.driveHandler.startNextDriveTask());
+        assertEquals(1, this.wheel.size());
+
+        //Car is stopped while driving, see SimCar.tick()
+        this.driveHandler.setTimer(null, null);
+        assertEquals(0, this.wheel.size());
+
+        this.advance(10000);
+
+        assertEquals(0, this.finished.get());
+    }
+
+    private void advance(long millis) {
+        this.clock.advance(millis);
+        this.wheel.advance(this.clock.currentTimeMillis());
+    }
+}